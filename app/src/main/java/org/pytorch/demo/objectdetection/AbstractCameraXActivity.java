@@ -29,12 +29,44 @@ public abstract class AbstractCameraXActivity<R> extends BaseModuleActivity {
     private static final int REQUEST_CODE_CAMERA_PERMISSION = 200;
     private static final String[] PERMISSIONS = {Manifest.permission.CAMERA};
 
-    private long mLastAnalysisResultTime;
+    private AdaptiveFrameScheduler mScheduler;
+    // analyzer thread only
+    private MotionGate mMotionGate;
 
     protected abstract int getContentViewLayoutId();
 
     protected abstract TextureView getCameraPreviewTextureView();
 
+    // highest rate frames are analyzed at
+    protected float getTargetAnalysisFps() {
+        return 15;
+    }
+
+    // share of the time the analyzer may be busy, lower leaves the phone more headroom
+    protected float getMaxAnalysisLoad() {
+        return 0.8f;
+    }
+
+    /** Rate frames are currently analyzed at, after the scheduler adapted to the model latency. */
+    protected float getEffectiveAnalysisFps() {
+        return mScheduler != null ? mScheduler.getEffectiveFps() : 0;
+    }
+
+    // mean gray level change below which a frame reuses the previous result, 0 to analyze all
+    protected float getMotionThreshold() {
+        return 2.0f;
+    }
+
+    /** Camera frames skipped by the motion gate so far. */
+    protected int getSkippedFrameCount() {
+        return mMotionGate != null ? mMotionGate.getSkippedCount() : 0;
+    }
+
+    /** Camera frames checked by the motion gate so far. */
+    protected int getGatedFrameCount() {
+        return mMotionGate != null ? mMotionGate.getCheckedCount() : 0;
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -82,14 +114,31 @@ public abstract class AbstractCameraXActivity<R> extends BaseModuleActivity {
                 .setImageReaderMode(ImageAnalysis.ImageReaderMode.ACQUIRE_LATEST_IMAGE)
                 .build();
         final ImageAnalysis imageAnalysis = new ImageAnalysis(imageAnalysisConfig);
+        mScheduler = new AdaptiveFrameScheduler(getTargetAnalysisFps(), getMaxAnalysisLoad());
         imageAnalysis.setAnalyzer((image, rotationDegrees) -> {
-            if (SystemClock.elapsedRealtime() - mLastAnalysisResultTime < 500) {
+            final long start = SystemClock.elapsedRealtime();
+            if (!mScheduler.admit(start)) {
                 return;
             }
 
+            if (getMotionThreshold() > 0) {
+                if (mMotionGate == null) {
+                    mMotionGate = new MotionGate(getMotionThreshold());
+                }
+                final ImageProxy.PlaneProxy luma = image.getPlanes()[0];
+                if (mMotionGate.isStatic(luma.getBuffer(), luma.getRowStride(), luma.getPixelStride(),
+                        image.getWidth(), image.getHeight())) {
+                    final R reused = reusePreviousResult();
+                    if (reused != null) {
+                        runOnUiThread(() -> applyToUiAnalyzeImageResult(reused));
+                    }
+                    return;
+                }
+            }
+
             final R result = analyzeImage(image, rotationDegrees);
             if (result != null) {
-                mLastAnalysisResultTime = SystemClock.elapsedRealtime();
+                mScheduler.onAnalyzed(SystemClock.elapsedRealtime() - start);
                 runOnUiThread(() -> applyToUiAnalyzeImageResult(result));
             }
         });
@@ -101,6 +150,16 @@ public abstract class AbstractCameraXActivity<R> extends BaseModuleActivity {
     @Nullable
     protected abstract R analyzeImage(ImageProxy image, int rotationDegrees);
 
+    /**
+     * Called instead of {@link #analyzeImage} for a frame the motion gate found static. The
+     * previous result stays on screen unless this returns a new one.
+     */
+    @WorkerThread
+    @Nullable
+    protected R reusePreviousResult() {
+        return null;
+    }
+
     @UiThread
     protected abstract void applyToUiAnalyzeImageResult(R result);
 }
@@ -0,0 +1,183 @@
+package org.pytorch.demo.objectdetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A collection of reference actions that a clip can be matched against.
+ *
+ * Every reference is reduced to a small summary vector, the mean pose over a fixed number of
+ * equal segments (piecewise aggregate approximation). The summaries are indexed in a
+ * {@link VpTree}, so a search first pulls the closest summaries in roughly logarithmic time.
+ * Only those candidates are compared with {@link PoseDtw}, whose LB_Keogh envelope check and
+ * early abandoning against the current k-th best discard most of them before a full alignment.
+ *
+ * References added from trajectory files are only summarized up front; their sequences are
+ * read back through the memory map when they become candidates.
+ */
+public class ActionLibrary {
+    private static final String TAG = "ActionLibrary";
+    private static final int SEGMENTS = 8;
+
+    public static class Match {
+        public final String name;
+        /** DTW distance per frame of both sequences. */
+        public final float distance;
+
+        Match(String name, float distance) {
+            this.name = name;
+            this.distance = distance;
+        }
+    }
+
+    private static class Entry {
+        final String name;
+        final File file;
+        final PoseSequence sequence;
+        final float[] summary;
+
+        Entry(String name, File file, PoseSequence sequence, float[] summary) {
+            this.name = name;
+            this.file = file;
+            this.sequence = sequence;
+            this.summary = summary;
+        }
+    }
+
+    private final PoseNormalizer mNormalizer;
+    private final PoseDtw mDtw = new PoseDtw();
+    private final List<Entry> mEntries = new ArrayList<>();
+    private VpTree mIndex;
+    private float mWindowRatio = 0.1f;
+    private int mCandidatesPerResult = 4;
+
+    public ActionLibrary(PoseNormalizer normalizer) {
+        mNormalizer = normalizer;
+    }
+
+    /** Band of the DTW re-ranking as a fraction of the longer sequence. */
+    public synchronized void setWindowRatio(float windowRatio) {
+        mWindowRatio = windowRatio;
+    }
+
+    /** How many summary neighbours are re-ranked with DTW for every requested match. */
+    public synchronized void setCandidatesPerResult(int candidatesPerResult) {
+        mCandidatesPerResult = Math.max(1, candidatesPerResult);
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized void add(String name, PoseSequence sequence) {
+        mEntries.add(new Entry(name, null, sequence, summarize(sequence)));
+        mIndex = null;
+    }
+
+    /** Adds a complete trajectory file as a reference named after the file. */
+    public synchronized void add(File trajectory) throws IOException {
+        try (TrajectoryReader reader = new TrajectoryReader(trajectory)) {
+            if (!reader.isComplete() || reader.getFrameCount() == 0) {
+                throw new IOException("Incomplete trajectory " + trajectory);
+            }
+            mEntries.add(new Entry(trajectory.getName(), trajectory, null, summarize(mNormalizer.normalize(reader))));
+        }
+        mIndex = null;
+    }
+
+    /** Adds every readable trajectory file in {@code dir}. */
+    public synchronized void addAll(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".kpt"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            try {
+                add(file);
+            } catch (IOException e) {
+                PlatformLog.w(TAG, "Skipping reference " + file, e);
+            }
+        }
+    }
+
+    /** The {@code k} references closest to {@code query}, most similar first. */
+    public synchronized List<Match> search(PoseSequence query, int k) throws IOException {
+        final List<Match> matches = new ArrayList<>(k);
+        if (mEntries.isEmpty() || k <= 0) {
+            return matches;
+        }
+        if (mIndex == null) {
+            float[][] summaries = new float[mEntries.size()][];
+            for (int i = 0; i < summaries.length; i++) {
+                summaries[i] = mEntries.get(i).summary;
+            }
+            mIndex = new VpTree(summaries);
+        }
+
+        final int[] candidates = new int[Math.min(mEntries.size(), k * mCandidatesPerResult)];
+        final int count = mIndex.search(summarize(query), candidates.length, candidates);
+
+        // DTW re-rank, with the current k-th best distance as the abandon cutoff
+        final float[] best = new float[k];
+        final String[] names = new String[k];
+        int found = 0;
+        for (int c = 0; c < count; c++) {
+            final Entry entry = mEntries.get(candidates[c]);
+            final PoseSequence reference = sequence(entry);
+            final int frames = query.getLength() + reference.getLength();
+            mDtw.setWindow(Math.max(1, Math.round(mWindowRatio * Math.max(query.getLength(), reference.getLength()))));
+            final float cutoff = found < k ? Float.POSITIVE_INFINITY : best[k - 1] * frames;
+            final float d = mDtw.distance(query, reference, cutoff) / frames;
+            if (d == Float.POSITIVE_INFINITY || (found == k && d >= best[k - 1])) {
+                continue;
+            }
+            int i = found < k ? found++ : k - 1;
+            while (i > 0 && best[i - 1] > d) {
+                best[i] = best[i - 1];
+                names[i] = names[i - 1];
+                i--;
+            }
+            best[i] = d;
+            names[i] = entry.name;
+        }
+        for (int i = 0; i < found; i++) {
+            matches.add(new Match(names[i], best[i]));
+        }
+        return matches;
+    }
+
+    private PoseSequence sequence(Entry entry) throws IOException {
+        if (entry.sequence != null) {
+            return entry.sequence;
+        }
+        try (TrajectoryReader reader = new TrajectoryReader(entry.file)) {
+            return mNormalizer.normalize(reader);
+        }
+    }
+
+    // mean pose of each of SEGMENTS equal parts of the sequence
+    private static float[] summarize(PoseSequence sequence) {
+        final int dim = sequence.getDimension();
+        final int length = sequence.getLength();
+        final float[] coords = sequence.getCoords();
+        final float[] summary = new float[SEGMENTS * dim];
+        for (int s = 0; s < SEGMENTS; s++) {
+            final int from = (int) ((long) s * length / SEGMENTS);
+            final int to = Math.max(from + 1, (int) ((long) (s + 1) * length / SEGMENTS));
+            for (int f = from; f < to && f < length; f++) {
+                for (int d = 0; d < dim; d++) {
+                    summary[s * dim + d] += coords[f * dim + d];
+                }
+            }
+            final int frames = Math.min(to, length) - from;
+            for (int d = 0; d < dim; d++) {
+                summary[s * dim + d] /= Math.max(1, frames);
+            }
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,72 @@
+package org.pytorch.demo.objectdetection;
+
+/**
+ * Decides which camera frames get analyzed. The scheduler keeps a moving average of the
+ * analysis latency and admits a frame once the longer of two intervals has passed since the
+ * last admitted one: the frame interval of the target rate, and the latency divided by the
+ * share of time the analyzer may be busy. A fast phone runs at the target rate; a slow one
+ * falls back to the rate its model time allows and keeps some headroom, instead of both
+ * being held to one fixed interval.
+ *
+ * {@link #admit} and {@link #onAnalyzed} belong to the analyzer thread; the getters may be
+ * called from any thread.
+ */
+public class AdaptiveFrameScheduler {
+    // weight of the newest sample in the moving averages
+    private static final float ALPHA = 0.2f;
+
+    private final float mTargetIntervalMs;
+    private final float mMaxLoad;
+    private long mLastAdmitted = -1;
+    private volatile float mLatencyMs;
+    private volatile float mAdmitIntervalMs;
+
+    /**
+     * @param targetFps highest analysis rate wanted
+     * @param maxLoad   share of the time the analyzer may spend analyzing, in (0, 1]; 1 runs
+     *                  back to back when the model is slower than the target rate
+     */
+    public AdaptiveFrameScheduler(float targetFps, float maxLoad) {
+        if (targetFps <= 0 || maxLoad <= 0 || maxLoad > 1) {
+            throw new IllegalArgumentException("Invalid target " + targetFps + " fps at load " + maxLoad);
+        }
+        mTargetIntervalMs = 1000 / targetFps;
+        mMaxLoad = maxLoad;
+    }
+
+    /** True if a frame arriving at {@code nowMs} should be analyzed; the frame then counts as admitted. */
+    public boolean admit(long nowMs) {
+        if (mLastAdmitted >= 0) {
+            final long elapsed = nowMs - mLastAdmitted;
+            if (elapsed < getIntervalMs()) {
+                return false;
+            }
+            final float interval = mAdmitIntervalMs;
+            mAdmitIntervalMs = interval > 0 ? interval + ALPHA * (elapsed - interval) : elapsed;
+        }
+        mLastAdmitted = nowMs;
+        return true;
+    }
+
+    /** Reports how long the analysis of an admitted frame took. */
+    public void onAnalyzed(long latencyMs) {
+        final float latency = mLatencyMs;
+        mLatencyMs = latency > 0 ? latency + ALPHA * (latencyMs - latency) : latencyMs;
+    }
+
+    /** Current minimum time between two admitted frames. */
+    public long getIntervalMs() {
+        return (long) Math.max(mTargetIntervalMs, mLatencyMs / mMaxLoad);
+    }
+
+    /** Moving average of the analysis latency. */
+    public float getLatencyMs() {
+        return mLatencyMs;
+    }
+
+    /** Rate frames are actually admitted at, 0 before the second one. */
+    public float getEffectiveFps() {
+        final float interval = mAdmitIntervalMs;
+        return interval > 0 ? 1000 / interval : 0;
+    }
+}
@@ -0,0 +1,122 @@
+package org.pytorch.demo.objectdetection;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoWriter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Encodes annotated frames into a Motion JPEG video on a background thread. Frames are
+ * handed over through a bounded queue, so the caller only waits when the encoder falls a
+ * whole queue behind, and no frame is dropped.
+ */
+public class AnnotatedVideoWriter implements Closeable {
+    // marks the end of the stream in the queue
+    private static final Mat END = new Mat();
+
+    private final File mFile;
+    private final VideoWriter mWriter;
+    private final BlockingQueue<Mat> mQueue;
+    private final Thread mThread;
+    private final AtomicReference<Throwable> mFailure = new AtomicReference<>();
+    private volatile int mFramesWritten;
+    private boolean mClosed;
+
+    /**
+     * @param frameSize size of every frame that will be written
+     */
+    public AnnotatedVideoWriter(File file, double fps, Size frameSize, int queueCapacity) throws IOException {
+        mFile = file;
+        mWriter = new VideoWriter(file.getAbsolutePath(), VideoWriter.fourcc('M', 'J', 'P', 'G'),
+                fps > 0 ? fps : 30, frameSize, true);
+        if (!mWriter.isOpened()) {
+            mWriter.release();
+            throw new IOException("Cannot open video writer for " + file);
+        }
+        mQueue = new ArrayBlockingQueue<>(queueCapacity);
+        mThread = new Thread(this::writeLoop, "pose-video-writer");
+        mThread.start();
+    }
+
+    /**
+     * Queues a frame for encoding. The writer takes ownership of {@code frame}, which must come
+     * from the {@link FramePool}, and hands it back to the pool once written.
+     */
+    public void write(Mat frame) throws IOException {
+        checkFailure();
+        try {
+            mQueue.put(frame);
+        } catch (InterruptedException e) {
+            FramePool.get().release(frame);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while queueing a frame for " + mFile, e);
+        }
+    }
+
+    /** Writes the frames still queued and finishes the file. */
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                mQueue.put(END);
+                mThread.join();
+                break;
+            } catch (InterruptedException e) {
+                // the writer still owns queued frames and the file, let it finish
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        checkFailure();
+    }
+
+    /** Frames encoded so far. */
+    public int getFramesWritten() {
+        return mFramesWritten;
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                Mat frame = mQueue.take();
+                if (frame == END) {
+                    break;
+                }
+                try {
+                    if (mFailure.get() == null) {
+                        mWriter.write(frame);
+                        mFramesWritten++;
+                    }
+                } catch (RuntimeException e) {
+                    mFailure.compareAndSet(null, e);
+                } finally {
+                    FramePool.get().release(frame);
+                }
+            }
+        } catch (InterruptedException e) {
+            mFailure.compareAndSet(null, e);
+        } finally {
+            mWriter.release();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable failure = mFailure.get();
+        if (failure != null) {
+            throw new IOException("Writing " + mFile + " failed", failure);
+        }
+    }
+}
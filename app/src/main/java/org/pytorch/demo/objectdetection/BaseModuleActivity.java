@@ -12,12 +12,19 @@ import android.os.HandlerThread;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
+import org.pytorch.Module;
+
 public class BaseModuleActivity extends AppCompatActivity {
     protected HandlerThread mBackgroundThread;
     protected Handler mBackgroundHandler;
     protected Handler mUIHandler;
+    // set while a model failure is on screen, so it is only reported once
+    private volatile boolean mModelFailureShown;
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
@@ -43,6 +50,42 @@ public class BaseModuleActivity extends AppCompatActivity {
         super.onDestroy();
     }
 
+    /**
+     * The model from the {@link ModelStore}, null until it is ready. If it could not be
+     * loaded, a dialog tells the user once and offers to retry or to leave.
+     */
+    @WorkerThread
+    @Nullable
+    protected Module peekModel(final String asset) {
+        final ModelStore models = ModelStore.get(this);
+        final Module module = models.peek(asset);
+        if (module == null && !mModelFailureShown) {
+            final Throwable error = models.getError(asset);
+            if (error != null) {
+                mModelFailureShown = true;
+                runOnUiThread(() -> showModelFailure(asset, error));
+            }
+        }
+        return module;
+    }
+
+    @UiThread
+    private void showModelFailure(final String asset, Throwable error) {
+        if (isFinishing()) {
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.model_failed)
+                .setMessage(asset + "\n" + error)
+                .setCancelable(false)
+                .setPositiveButton(R.string.retry, (dialog, which) -> {
+                    ModelStore.get(this).retry(asset);
+                    mModelFailureShown = false;
+                })
+                .setNegativeButton(R.string.close, (dialog, which) -> finish())
+                .show();
+    }
+
     protected void stopBackgroundThread() {
       mBackgroundThread.quitSafely();
       try {
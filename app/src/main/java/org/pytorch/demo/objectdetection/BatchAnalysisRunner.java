@@ -0,0 +1,267 @@
+package org.pytorch.demo.objectdetection;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Analyzes every video of a directory without any UI. Each video goes through its own
+ * {@link PoseVideoPipeline}, and its keypoints are written to {@code <name>.kpt}, a
+ * trajectory that {@link ActionLibrary#addAll} picks up as a reference, together with the
+ * stage latencies in {@code <name>-perf.txt}. {@code batch-report.txt} sums up every video.
+ *
+ * {@link #setParallelism} videos are analyzed at once, each by {@link #setWorkers} infer
+ * workers. Every analysis thread gets its own backends from the {@link BackendFactory} when
+ * it starts its first video and reuses them for the following ones. A video that fails is
+ * reported and does not stop the others.
+ */
+public class BatchAnalysisRunner {
+    private static final String[] VIDEO_SUFFIXES = {".avi", ".mp4", ".mkv", ".mov", ".3gp"};
+    static final String REPORT = "batch-report.txt";
+
+    public interface BackendFactory {
+        /** A new backend for {@code model}, {@link PrePostProcessor#POSE_MODEL} or {@link PrePostProcessor#DETECTION_MODEL}. */
+        InferenceBackend create(String model) throws IOException;
+    }
+
+    public interface PipelineSetup {
+        /** Applies settings such as the batch size to a new pipeline before it runs. */
+        void configure(PoseVideoPipeline pipeline);
+    }
+
+    /** Outcome of one video. */
+    public static class Report {
+        public final String video;
+        public final int frames;
+        public final int inferences;
+        public final long elapsedMs;
+        /** Why the video failed, null if it was analyzed completely. */
+        public final String error;
+
+        Report(String video, int frames, int inferences, long elapsedMs, String error) {
+            this.video = video;
+            this.frames = frames;
+            this.inferences = inferences;
+            this.elapsedMs = elapsedMs;
+            this.error = error;
+        }
+
+        public float getFps() {
+            return elapsedMs > 0 ? frames * 1000f / elapsedMs : 0;
+        }
+    }
+
+    private final BackendFactory mFactory;
+    private final File mOutputDir;
+    private int mParallelism = 1;
+    private int mWorkers = 1;
+    private int mQueueCapacity = 4;
+    private boolean mPersonDetection = true;
+    private PipelineSetup mSetup;
+    private final List<Thread> mThreads = new ArrayList<>();
+    private final List<PoseVideoPipeline> mPipelines = new ArrayList<>();
+    private volatile boolean mCancelled;
+
+    public BatchAnalysisRunner(BackendFactory factory, File outputDir) {
+        mFactory = factory;
+        mOutputDir = outputDir;
+    }
+
+    /** Videos analyzed at the same time. Must be called before {@link #run}. */
+    public void setParallelism(int videos) {
+        if (videos < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + videos);
+        }
+        mParallelism = videos;
+    }
+
+    /** Infer workers, and pose backends, per video. Must be called before {@link #run}. */
+    public void setWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Worker count must be positive: " + workers);
+        }
+        mWorkers = workers;
+    }
+
+    /** Capacity of the queues between the pipeline stages. Must be called before {@link #run}. */
+    public void setQueueCapacity(int capacity) {
+        mQueueCapacity = capacity;
+    }
+
+    /** Whether the pose model sees a crop around the person, see {@link PoseVideoPipeline#setPersonDetector}. */
+    public void setPersonDetection(boolean personDetection) {
+        mPersonDetection = personDetection;
+    }
+
+    public void setPipelineSetup(PipelineSetup setup) {
+        mSetup = setup;
+    }
+
+    /**
+     * Analyzes the videos in {@code videoDir}, in name order, and blocks until all of them
+     * are done or {@link #cancel} was called.
+     *
+     * @return one report per video, in name order
+     */
+    public List<Report> run(File videoDir) throws IOException, InterruptedException {
+        final File[] videos = videoDir.listFiles((dir, name) -> isVideo(name));
+        if (videos == null) {
+            throw new IOException("Cannot list videos in " + videoDir);
+        }
+        if (!mOutputDir.isDirectory() && !mOutputDir.mkdirs()) {
+            throw new IOException("Cannot create " + mOutputDir);
+        }
+        Arrays.sort(videos);
+
+        final long runStart = System.nanoTime();
+        synchronized (mThreads) {
+            mThreads.clear();
+        }
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReferenceArray<Report> reports = new AtomicReferenceArray<>(videos.length);
+        final int threads = Math.min(mParallelism, videos.length);
+        for (int t = 0; t < threads; t++) {
+            final Thread thread = new Thread(() -> {
+                InferenceBackend[] backends = null;
+                InferenceBackend detector = null;
+                int index;
+                while (!mCancelled && (index = next.getAndIncrement()) < videos.length) {
+                    final long startTime = System.nanoTime();
+                    try {
+                        if (backends == null) {
+                            // kept only once every create succeeded, a failed one is retried
+                            // for the next video instead of leaving null backends behind
+                            final InferenceBackend[] created = new InferenceBackend[mWorkers];
+                            for (int i = 0; i < mWorkers; i++) {
+                                created[i] = mFactory.create(PrePostProcessor.POSE_MODEL);
+                            }
+                            final InferenceBackend createdDetector = mPersonDetection
+                                    ? mFactory.create(PrePostProcessor.DETECTION_MODEL) : null;
+                            backends = created;
+                            detector = createdDetector;
+                        }
+                        reports.set(index, analyze(videos[index], backends, detector));
+                    } catch (IOException | RuntimeException e) {
+                        reports.set(index, new Report(videos[index].getName(), 0, 0,
+                                (System.nanoTime() - startTime) / 1000000, String.valueOf(e)));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "batch-analysis-" + t);
+            synchronized (mThreads) {
+                mThreads.add(thread);
+            }
+            thread.start();
+        }
+
+        try {
+            for (Thread thread : mThreads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            cancel();
+            throw e;
+        }
+
+        final List<Report> result = new ArrayList<>(videos.length);
+        for (int i = 0; i < videos.length; i++) {
+            if (reports.get(i) != null) {
+                result.add(reports.get(i));
+            }
+        }
+        writeReport(new File(mOutputDir, REPORT), result, (System.nanoTime() - runStart) / 1000000);
+        return result;
+    }
+
+    /** Stops all analyses. Safe to call from any thread; {@link #run} returns shortly after. */
+    public void cancel() {
+        mCancelled = true;
+        synchronized (mPipelines) {
+            for (PoseVideoPipeline pipeline : mPipelines) {
+                pipeline.cancel();
+            }
+        }
+        synchronized (mThreads) {
+            for (Thread thread : mThreads) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    private Report analyze(File video, InferenceBackend[] backends, InferenceBackend detector)
+            throws IOException, InterruptedException {
+        final String name = baseName(video.getName());
+        final PerfMetrics metrics = new PerfMetrics();
+        final PoseVideoPipeline pipeline = new PoseVideoPipeline(backends, mQueueCapacity);
+        if (detector != null) {
+            pipeline.setPersonDetector(detector);
+        }
+        if (mSetup != null) {
+            mSetup.configure(pipeline);
+        }
+        pipeline.setMetrics(metrics);
+
+        synchronized (mPipelines) {
+            mPipelines.add(pipeline);
+        }
+        final long startTime = System.nanoTime();
+        final File trajectoryFile = new File(mOutputDir, name + ".kpt");
+        boolean complete = false;
+        try (TrajectoryWriter trajectory = new TrajectoryWriter(trajectoryFile, PrePostProcessor.mNumKeypoint)) {
+            final int frames = pipeline.process(video.getAbsolutePath(),
+                    frame -> trajectory.append(frame.timestampMs, frame.points));
+            if (!mCancelled) {
+                trajectory.markComplete();
+                complete = true;
+            }
+            metrics.dump(new File(mOutputDir, name + "-perf.txt"));
+            return new Report(video.getName(), frames, pipeline.getInferenceCount(),
+                    (System.nanoTime() - startTime) / 1000000, complete ? null : "cancelled");
+        } finally {
+            synchronized (mPipelines) {
+                mPipelines.remove(pipeline);
+            }
+            // a partial trajectory would only be skipped as a reference later
+            if (!complete) {
+                trajectoryFile.delete();
+            }
+        }
+    }
+
+    private void writeReport(File file, List<Report> reports, long elapsedMs) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            int frames = 0;
+            out.printf(Locale.US, "%-32s %8s %10s %10s %8s%n", "video", "frames", "inferences", "ms", "fps");
+            for (Report report : reports) {
+                out.printf(Locale.US, "%-32s %8d %10d %10d %8.2f%s%n", report.video, report.frames, report.inferences,
+                        report.elapsedMs, report.getFps(), report.error != null ? "  " + report.error : "");
+                frames += report.frames;
+            }
+            out.printf(Locale.US, "%d videos, %d frames in %d ms, %.2f fps, %d at a time with %d workers each%n",
+                    reports.size(), frames, elapsedMs, elapsedMs > 0 ? frames * 1000f / elapsedMs : 0, mParallelism, mWorkers);
+        }
+    }
+
+    private static boolean isVideo(String name) {
+        final String lower = name.toLowerCase(Locale.US);
+        for (String suffix : VIDEO_SUFFIXES) {
+            if (lower.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String baseName(String name) {
+        final int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
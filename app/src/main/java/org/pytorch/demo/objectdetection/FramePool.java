@@ -0,0 +1,224 @@
+package org.pytorch.demo.objectdetection;
+
+import org.opencv.core.Mat;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide pool of the large per-frame buffers: OpenCV Mats keyed by size and type, and
+ * direct float buffers for input tensors keyed by capacity. A buffer is taken with an
+ * acquire call and handed back with {@link #release}; frames of the same video then keep
+ * cycling through the same native and direct memory instead of leaving a Mat finalizer or a
+ * direct buffer behind for the GC every frame. A few idle buffers are kept per key, more are
+ * freed.
+ *
+ * Debug builds also remember where every outstanding buffer was acquired. A buffer that
+ * becomes garbage without being released is logged as a leak with that stack trace, and
+ * releasing a buffer the pool did not hand out, or releasing it twice, throws.
+ *
+ * All methods are thread-safe; a buffer may be released on another thread than the one that
+ * acquired it.
+ */
+public class FramePool {
+    private static final String TAG = "FramePool";
+    // idle buffers kept per size, the pipelines need a handful per queue
+    private static final int MAX_IDLE = 8;
+
+    private static final FramePool sInstance = new FramePool(BuildConfig.DEBUG);
+
+    // an outstanding buffer and where it was acquired, cleared once it is released
+    private static class Acquisition extends WeakReference<Object> {
+        final Throwable site;
+
+        Acquisition(Object buffer, ReferenceQueue<Object> queue) {
+            super(buffer, queue);
+            site = new Throwable("Acquired here");
+        }
+    }
+
+    private final Map<Long, ArrayDeque<Mat>> mIdleMats = new HashMap<>();
+    private final Map<Integer, ArrayDeque<FloatBuffer>> mIdleBuffers = new HashMap<>();
+    private final boolean mTrackLeaks;
+    // outstanding buffers by identity hash; Mat and FloatBuffer keys would hold them strongly
+    // and FloatBuffer compares by content
+    private final Map<Integer, List<Acquisition>> mOutstanding = new HashMap<>();
+    private final ReferenceQueue<Object> mCollected = new ReferenceQueue<>();
+    private int mAllocations;
+    private int mReuses;
+    private int mLeaks;
+
+    public static FramePool get() {
+        return sInstance;
+    }
+
+    /** @param trackLeaks remember acquisition sites, see the class comment */
+    public FramePool(boolean trackLeaks) {
+        mTrackLeaks = trackLeaks;
+    }
+
+    /** A Mat of the given size and type; its pixels are left over from its previous use. */
+    public synchronized Mat acquireMat(int rows, int cols, int type) {
+        final ArrayDeque<Mat> idle = mIdleMats.get(key(rows, cols, type));
+        Mat mat = idle != null ? idle.poll() : null;
+        if (mat != null) {
+            mReuses++;
+        } else {
+            mat = new Mat(rows, cols, type);
+            mAllocations++;
+        }
+        track(mat);
+        return mat;
+    }
+
+    /**
+     * A direct buffer of {@code capacity} floats in native order, as Tensor.fromBlob
+     * needs, positioned at 0; its contents are left over from its previous use.
+     */
+    public synchronized FloatBuffer acquireFloatBuffer(int capacity) {
+        final ArrayDeque<FloatBuffer> idle = mIdleBuffers.get(capacity);
+        FloatBuffer buffer = idle != null ? idle.poll() : null;
+        if (buffer != null) {
+            buffer.clear();
+            mReuses++;
+        } else {
+            buffer = ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+            mAllocations++;
+        }
+        track(buffer);
+        return buffer;
+    }
+
+    /**
+     * Hands back a Mat from {@link #acquireMat}. It is pooled under its current size, so a
+     * Mat that a video read or a resize reallocated is reused for its new size.
+     */
+    public synchronized void release(Mat mat) {
+        untrack(mat);
+        if (mat.empty()) {
+            mat.release();
+            return;
+        }
+        final long key = key(mat.rows(), mat.cols(), mat.type());
+        ArrayDeque<Mat> idle = mIdleMats.get(key);
+        if (idle == null) {
+            idle = new ArrayDeque<>();
+            mIdleMats.put(key, idle);
+        }
+        if (idle.size() < MAX_IDLE) {
+            idle.add(mat);
+        } else {
+            mat.release();
+        }
+    }
+
+    /** Hands back a buffer from {@link #acquireFloatBuffer}. */
+    public synchronized void release(FloatBuffer buffer) {
+        untrack(buffer);
+        ArrayDeque<FloatBuffer> idle = mIdleBuffers.get(buffer.capacity());
+        if (idle == null) {
+            idle = new ArrayDeque<>();
+            mIdleBuffers.put(buffer.capacity(), idle);
+        }
+        if (idle.size() < MAX_IDLE) {
+            idle.add(buffer);
+        }
+    }
+
+    /** Frees every idle buffer, e.g. when the app is trimming memory. */
+    public synchronized void clear() {
+        for (ArrayDeque<Mat> idle : mIdleMats.values()) {
+            for (Mat mat : idle) {
+                mat.release();
+            }
+        }
+        mIdleMats.clear();
+        mIdleBuffers.clear();
+    }
+
+    /** Buffers allocated because no idle one of the requested size was available. */
+    public synchronized int getAllocationCount() {
+        return mAllocations;
+    }
+
+    /** Acquisitions served with an idle buffer. */
+    public synchronized int getReuseCount() {
+        return mReuses;
+    }
+
+    /** Buffers found garbage collected without having been released, 0 without leak tracking. */
+    public synchronized int getLeakCount() {
+        pollLeaks();
+        return mLeaks;
+    }
+
+    private void track(Object buffer) {
+        if (!mTrackLeaks) {
+            return;
+        }
+        pollLeaks();
+        final int hash = System.identityHashCode(buffer);
+        List<Acquisition> acquisitions = mOutstanding.get(hash);
+        if (acquisitions == null) {
+            acquisitions = new ArrayList<>(1);
+            mOutstanding.put(hash, acquisitions);
+        }
+        acquisitions.add(new Acquisition(buffer, mCollected));
+    }
+
+    private void untrack(Object buffer) {
+        if (!mTrackLeaks) {
+            return;
+        }
+        final int hash = System.identityHashCode(buffer);
+        final List<Acquisition> acquisitions = mOutstanding.get(hash);
+        if (acquisitions != null) {
+            for (int i = 0; i < acquisitions.size(); i++) {
+                final Acquisition acquisition = acquisitions.get(i);
+                if (acquisition.get() == buffer) {
+                    acquisition.clear();
+                    remove(hash, acquisitions, i);
+                    return;
+                }
+            }
+        }
+        throw new IllegalStateException("Released a buffer that is not acquired from this pool: " + buffer);
+    }
+
+    private void pollLeaks() {
+        Reference<?> reference;
+        while ((reference = mCollected.poll()) != null) {
+            // released buffers were cleared before they could be enqueued, so this one was dropped
+            final Acquisition leaked = (Acquisition) reference;
+            for (Map.Entry<Integer, List<Acquisition>> entry : mOutstanding.entrySet()) {
+                final int index = entry.getValue().indexOf(leaked);
+                if (index >= 0) {
+                    remove(entry.getKey(), entry.getValue(), index);
+                    mLeaks++;
+                    PlatformLog.w(TAG, "Frame buffer was never released", leaked.site);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void remove(int hash, List<Acquisition> acquisitions, int index) {
+        acquisitions.remove(index);
+        if (acquisitions.isEmpty()) {
+            mOutstanding.remove(hash);
+        }
+    }
+
+    private static long key(int rows, int cols, int type) {
+        return ((long) rows << 40) | ((long) cols << 16) | type;
+    }
+}
@@ -0,0 +1,97 @@
+package org.pytorch.demo.objectdetection;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative long values with log-linear buckets: every power of
+ * two is split into 16 buckets, so percentiles are within about 6% of the recorded values
+ * over the whole range while the histogram stays a fixed array of about 600 counters.
+ * Recording is one atomic increment per counter and safe from any thread; reads see a
+ * recent, not necessarily consistent, state.
+ */
+public class Histogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+    // values up to 2^40, about 18 minutes in nanoseconds, larger ones land in the last bucket
+    private static final int MAX_SHIFT = 40 - SUB_BITS;
+    private static final int BUCKETS = (MAX_SHIFT + 2) * SUB;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mCounts.incrementAndGet(index(value));
+        mCount.incrementAndGet();
+        mSum.addAndGet(value);
+        long max;
+        while (value > (max = mMax.get()) && !mMax.compareAndSet(max, value)) {
+            // another thread raised the max, retry against it
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public double getMean() {
+        final long count = mCount.get();
+        return count > 0 ? (double) mSum.get() / count : 0;
+    }
+
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /** Value below which a fraction {@code q} of the recorded values fall, 0 when empty. */
+    public long getPercentile(double q) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += mCounts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(middle(i), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts.set(i, 0);
+        }
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    static int index(long value) {
+        if (value < SUB) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        if (shift > MAX_SHIFT) {
+            return BUCKETS - 1;
+        }
+        return (shift + 1) * SUB + (int) (value >>> shift) - SUB;
+    }
+
+    // middle of the values that fall into bucket i
+    static long middle(int index) {
+        final int shift = Math.max(index / SUB - 1, 0);
+        final long low = (long) (index - shift * SUB) << shift;
+        return low + ((1L << shift) - 1) / 2;
+    }
+}
@@ -0,0 +1,18 @@
+package org.pytorch.demo.objectdetection;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A model the pipelines can run, independent of how inference happens: a PyTorch Lite
+ * {@link ModuleBackend} on a device, or a {@link StubBackend} where there is no model. A
+ * backend is only ever called from one thread at a time.
+ */
+public interface InferenceBackend {
+    /**
+     * Runs the model on one NCHW input.
+     *
+     * @param input direct buffer holding the product of {@code shape} floats from position 0
+     * @return the values of the model's first output, one item of the batch after the other
+     */
+    float[] forward(FloatBuffer input, long[] shape);
+}
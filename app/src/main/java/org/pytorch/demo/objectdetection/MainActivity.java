@@ -11,6 +11,7 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -19,6 +20,7 @@ import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.SystemClock;
 import android.provider.MediaStore;
 import android.util.Log;
 import android.view.View;
@@ -35,28 +37,24 @@ import androidx.core.content.ContextCompat;
 import org.opencv.android.BaseLoaderCallback;
 import org.opencv.android.LoaderCallbackInterface;
 import org.opencv.android.OpenCVLoader;
-import org.opencv.android.Utils;
-import org.opencv.core.CvType;
-import org.opencv.core.Mat;
-import org.opencv.core.Point;
-import org.opencv.core.Scalar;
 import org.opencv.core.Size;
-import org.opencv.imgcodecs.Imgcodecs;
-import org.opencv.imgproc.Imgproc;
 import org.opencv.videoio.VideoCapture;
-import org.pytorch.IValue;
+import org.opencv.videoio.Videoio;
 import org.pytorch.LiteModuleLoader;
-import org.pytorch.Module;
-import org.pytorch.Tensor;
-import org.pytorch.torchvision.TensorImageUtils;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -69,7 +67,6 @@ public class MainActivity extends AppCompatActivity implements Runnable {
     private Button mButtonDetect;
     private ProgressBar mProgressBar;
     private Bitmap mBitmap = null;
-    private Module mModule = null;
     private float mImgScaleX, mImgScaleY, mIvScaleX, mIvScaleY, mStartX, mStartY;
 
     static {
@@ -77,23 +74,65 @@ public class MainActivity extends AppCompatActivity implements Runnable {
         System.loadLibrary("opencv_java3");
     }
 
-    public static String assetFilePath(Context context, String assetName) throws IOException {
+    // buffer for assets that are stored compressed and have to be inflated through a stream
+    private static final int ASSET_COPY_BUFFER = 256 * 1024;
+
+    /**
+     * Path of a copy of the asset in the files dir. The copy is made once per installed version
+     * of the app: a stamp file next to it records the install time of the apk it came from and
+     * its length, so a copy left truncated or one from before an update is made again.
+     */
+    public static synchronized String assetFilePath(Context context, String assetName) throws IOException {
         File file = new File(context.getFilesDir(), assetName);
-        if (file.exists() && file.length() > 0) {
-            return file.getAbsolutePath();
+        File stampFile = new File(context.getFilesDir(), assetName + ".stamp");
+        long installTime = 0;
+        try {
+            installTime = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w("Object Detection", "Cannot read package info", e);
+        }
+        if (file.exists() && stampFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(stampFile))) {
+                if (in.readLong() == installTime && in.readLong() == file.length()) {
+                    return file.getAbsolutePath();
+                }
+            } catch (IOException e) {
+                // unreadable stamp, copy again
+            }
         }
 
-        try (InputStream is = context.getAssets().open(assetName)) {
-            try (OutputStream os = new FileOutputStream(file)) {
-                byte[] buffer = new byte[4 * 1024];
+        stampFile.delete();
+        File tmp = new File(context.getFilesDir(), assetName + ".tmp");
+        try {
+            // assets stored uncompressed are copied straight out of the apk by the kernel
+            try (AssetFileDescriptor fd = context.getAssets().openFd(assetName);
+                 FileChannel in = fd.createInputStream().getChannel();
+                 FileChannel out = new FileOutputStream(tmp).getChannel()) {
+                final long length = fd.getLength();
+                long copied = 0;
+                while (copied < length) {
+                    copied += in.transferTo(fd.getStartOffset() + copied, length - copied, out);
+                }
+            }
+        } catch (FileNotFoundException e) {
+            try (InputStream is = context.getAssets().open(assetName);
+                 OutputStream os = new FileOutputStream(tmp)) {
+                byte[] buffer = new byte[ASSET_COPY_BUFFER];
                 int read;
                 while ((read = is.read(buffer)) != -1) {
                     os.write(buffer, 0, read);
                 }
-                os.flush();
             }
-            return file.getAbsolutePath();
         }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot move " + tmp + " to " + file);
+        }
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(stampFile))) {
+            out.writeLong(installTime);
+            out.writeLong(file.length());
+        }
+        return file.getAbsolutePath();
     }
 
     @Override
@@ -178,6 +217,20 @@ public class MainActivity extends AppCompatActivity implements Runnable {
             }
         });
 
+        final Button buttonLivePose = findViewById(R.id.livePoseButton);
+        buttonLivePose.setOnClickListener(new View.OnClickListener() {
+            public void onClick(View v) {
+                File reference = mTrajectoryFile;
+                if (reference == null) {
+                    Toast.makeText(MainActivity.this, R.string.no_reference, Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                final Intent intent = new Intent(MainActivity.this, PoseCameraActivity.class);
+                intent.putExtra(PoseCameraActivity.EXTRA_REFERENCE, reference.getAbsolutePath());
+                startActivity(intent);
+            }
+        });
+
         mButtonDetect = findViewById(R.id.detectButton);
         mProgressBar = (ProgressBar) findViewById(R.id.progressBar);
         mButtonDetect.setOnClickListener(new View.OnClickListener() {
@@ -200,8 +253,10 @@ public class MainActivity extends AppCompatActivity implements Runnable {
             }
         });
 
+        // extracts and warms up the models in the background
+        ModelStore.get(this);
+
         try {
-            mModule = LiteModuleLoader.load(MainActivity.assetFilePath(getApplicationContext(), "pose_hrnet_w32_256x192.ptl"));
             BufferedReader br = new BufferedReader(new InputStreamReader(getAssets().open("classes.txt")));
             String line;
             List<String> classes = new ArrayList<>();
@@ -217,6 +272,12 @@ public class MainActivity extends AppCompatActivity implements Runnable {
 
         boolean flag = OpenCVLoader.initDebug();
         Log.i("##############gb init opencv :", String.valueOf(flag));
+
+        final String batchDir = getIntent().getStringExtra(EXTRA_BATCH_DIR);
+        if (batchDir != null) {
+            final boolean stub = getIntent().getBooleanExtra(EXTRA_BATCH_STUB, false);
+            new Thread(() -> runBatch(new File(batchDir), stub), "batch-analysis").start();
+        }
     }
 
     @Override
@@ -258,25 +319,65 @@ public class MainActivity extends AppCompatActivity implements Runnable {
         }
     }
 
+    // frames per HRNet forward call when analyzing a recorded video
+    private static final int POSE_BATCH_SIZE = 4;
+    // HRNet runs on every Nth frame, the frames in between are interpolated
+    private static final int POSE_KEYFRAME_INTERVAL = 3;
+    // people cropped from every keyframe, the followed one first; the others are drawn only
+    private static final int POSE_MAX_PEOPLE = 3;
+    // HRNet instances analyzing a recorded video in parallel, and the intra-op threads of each
+    private static final int POSE_WORKERS = 2;
+    private static final int POSE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / POSE_WORKERS);
+    // upper bound for the keypoint trajectories kept between runs
+    private static final long POSE_CACHE_BYTES = 32 * 1024 * 1024;
+    // annotated frames that may wait for the video encoder before the pipeline is held back
+    private static final int VIDEO_QUEUE_FRAMES = 16;
+    // how often the performance overlay is refreshed while a video is analyzed
+    private static final long OVERLAY_INTERVAL_MS = 500;
+    // videos a batch analysis works on at the same time
+    private static final int BATCH_PARALLELISM = 2;
+
+    /**
+     * Directory whose videos are analyzed into files/batch on start, without touching the UI:
+     * adb shell am start -n org.pytorch.demo.objectdetection/.MainActivity --es batchDir /sdcard/Movies
+     */
+    static final String EXTRA_BATCH_DIR = "batchDir";
+    /** With {@link #EXTRA_BATCH_DIR}, run the batch on {@link StubBackend}s to profile the pipeline alone. */
+    static final String EXTRA_BATCH_STUB = "batchStub";
+
     public float[][] mPrintPointArray = null;
-    public static int mNumKeypoint = 17;
-    private Mat mMat = null;
+    private volatile PoseVideoPipeline mPipeline;
+    // created by the first analysis, only touched by the analysis thread
+    private ModulePool mPosePool;
+    // an instance of its own, ModelStore's is run by ObjectDetectionActivity
+    private InferenceBackend mPersonDetector;
+    // last overlay refresh, only touched by the pipeline's listener
+    private long mOverlayTime;
+    // keypoints of every frame of the last analyzed video
+    private volatile File mTrajectoryFile;
+    private final PoseNormalizer mPoseNormalizer = new PoseNormalizer();
+    // reference actions from files/actions, loaded by the first analysis
+    private ActionLibrary mActionLibrary;
+    private volatile BatchAnalysisRunner mBatchRunner;
 
-    protected int getImageSizeX() {
-        return 192;
-    }
-    protected int getImageSizeY() {
-        return 256;
+    @Override
+    protected void onDestroy() {
+        PoseVideoPipeline pipeline = mPipeline;
+        if (pipeline != null) {
+            pipeline.cancel();
+        }
+        BatchAnalysisRunner batchRunner = mBatchRunner;
+        if (batchRunner != null) {
+            batchRunner.cancel();
+        }
+        super.onDestroy();
     }
 
-    protected int getOutputSizeX() {
-        return 48;
-    }
-    protected int getOutputSizeY() {
-        return 64;
-    }
-    protected float getRatio(){
-        return (float)getOutputSizeX() / (float)getImageSizeX();
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // idle frame buffers are only a cache for the next video
+        FramePool.get().clear();
     }
 
     @Override
@@ -285,179 +386,195 @@ public class MainActivity extends AppCompatActivity implements Runnable {
         String mp4_path = null;
         try {
             mp4_path = MainActivity.assetFilePath(getApplicationContext(), "shooting-model.avi");
-            Log.i("##############gb", mp4_path);
         } catch (IOException e) {
             Log.e("##############gb", "Error reading mp4.", e);
         }
-        VideoCapture video = new VideoCapture(mp4_path);
-        Mat frame = new Mat();
-        while(video.read(frame)) {
-            Bitmap bitmap = Bitmap.createBitmap(frame.cols(),frame.rows(),Bitmap.Config.ARGB_8888);
-            org.opencv.android.Utils.matToBitmap(frame, bitmap);
-            Bitmap resizedBitmap = Bitmap.createScaledBitmap(bitmap, PrePostProcessor.mInputWidth, PrePostProcessor.mInputHeight, true);
-            final Tensor inputTensor = TensorImageUtils.bitmapToFloat32Tensor(resizedBitmap, PrePostProcessor.NO_MEAN_RGB, PrePostProcessor.NO_STD_RGB);
-            final Tensor outputTensor = mModule.forward(IValue.from(inputTensor)).toTensor();
-            long[] in_size = inputTensor.shape();
-            long[] out_size = outputTensor.shape();
-            Log.i("##############gb out_size 0#######", String.valueOf(out_size[0]));
-            Log.i("##############gb out_size 1#######", String.valueOf(out_size[1]));
-            Log.i("##############gb out_size 2#######", String.valueOf(out_size[2]));
-            Log.i("##############gb out_size 3#######", String.valueOf(out_size[3]));
-            Mat res_mat = new Mat(resizedBitmap.getHeight(), resizedBitmap.getWidth(), CvType.CV_8UC3);
-            org.opencv.android.Utils.bitmapToMat(resizedBitmap, res_mat);
-            String im_path = null;
-            try {
-                im_path = MainActivity.assetFilePath(getApplicationContext(), "test.jpg");
-            } catch (IOException e) {
-                Log.e("##############gb", "Error save im.", e);
-            }
-
-
-            float[] result = outputTensor.getDataAsFloatArray();
-            if (mPrintPointArray == null)
-                mPrintPointArray = new float[2][mNumKeypoint];
-
-            //先进行高斯滤波,5*5
-            if (mMat == null)
-                mMat = new Mat(getOutputSizeY(), getOutputSizeX(), CvType.CV_32F);
-
-            float[] tempArray = new float[getOutputSizeY() * getOutputSizeX()];
-            float[] outTempArray = new float[getOutputSizeY() * getOutputSizeX()];
+        final File video_file = new File(getFilesDir(), "shooting-model-pose.avi");
+        final SkeletonRenderer renderer = new SkeletonRenderer();
+        final PerfMetrics metrics = new PerfMetrics();
 
-            for (int i = 0; i < mNumKeypoint; i++) {
-                int index = 0;
-                for (int y = 0; y < getOutputSizeY(); y++) {
-                    for (int x = 0; x < getOutputSizeX(); x++) {
-                        tempArray[index] = result[i * getOutputSizeY() * getOutputSizeX() + y * getOutputSizeX() + x];
-                        index++;
-                    }
-                }
-
-                mMat.put(0, 0, tempArray);
-                Imgproc.GaussianBlur(mMat, mMat, new Size(3, 3), 1, 1);
-                mMat.get(0, 0, outTempArray);
-                float maxX = 0, maxY = 0;
-                float max = 0;
-
-                for (int y = 0; y < getOutputSizeY(); y++) {
-                    for (int x = 0; x < getOutputSizeX(); x++) {
-                        float center = get(x, y, outTempArray);
-                        if (center >= 0.01) {
-                            if (center > max) {
-                                max = center;
-                                maxX = x;
-                                maxY = y;
-                            }
+        final long startTime = SystemClock.elapsedRealtime();
+        final ModelStore models = ModelStore.get(this);
+        final PoseCache cache = new PoseCache(new File(getFilesDir(), "pose-cache"), POSE_CACHE_BYTES);
+        try {
+            if (mPosePool == null) {
+                ModulePool.setNumThreads(POSE_THREADS);
+                // waits for the asset to be extracted; the shared instance stays with the activities
+                models.await(ModelStore.POSE_MODEL);
+                mPosePool = new ModulePool(models.getFile(ModelStore.POSE_MODEL).getAbsolutePath(), POSE_WORKERS);
+            }
+            mPipeline = new PoseVideoPipeline(mPosePool.getBackends(), 4);
+            configure(mPipeline);
+            if (mPersonDetector == null) {
+                models.await(ModelStore.DETECTION_MODEL);
+                mPersonDetector = new ModuleBackend(
+                        LiteModuleLoader.load(models.getFile(ModelStore.DETECTION_MODEL).getAbsolutePath()));
+            }
+            mPipeline.setPersonDetector(mPersonDetector);
+            mPipeline.setMetrics(metrics);
+            final File trajectory_file = cache.getEntry(
+                    PoseCache.key(new File(mp4_path), models.getFile(ModelStore.POSE_MODEL),
+                            models.getFile(ModelStore.DETECTION_MODEL), mPipeline.getSignature()));
+            if (loadCachedTrajectory(trajectory_file)) {
+                Log.i("##############gb", "keypoints of " + mp4_path + " loaded from cache in "
+                        + (SystemClock.elapsedRealtime() - startTime) + " ms");
+            } else {
+                try (TrajectoryWriter trajectory = new TrajectoryWriter(trajectory_file, PrePostProcessor.mNumKeypoint, true);
+                     AnnotatedVideoWriter video = new AnnotatedVideoWriter(video_file, frameRate(mp4_path),
+                             new Size(PrePostProcessor.mInputWidth, PrePostProcessor.mInputHeight), VIDEO_QUEUE_FRAMES)) {
+                    final int cached_frames = trajectory.getFrameCount();
+                    int frames = mPipeline.process(mp4_path, cached_frames, frame -> {
+                        mPrintPointArray = frame.points;
+                        long start = PerfMetrics.now();
+                        renderer.draw(frame.resized, frame.points);
+                        for (PoseFrame.Person person : frame.others) {
+                            renderer.draw(frame.resized, person.points);
                         }
-                    }
-                }
-                if (max == 0) {
-                    maxX = 0;
-                    maxY = 0;
+                        metrics.record(PerfMetrics.Stage.DRAW, start);
+                        start = PerfMetrics.now();
+                        trajectory.append(frame.timestampMs, frame.points);
+                        // the video writer releases the frame once encoded
+                        video.write(frame.resized);
+                        frame.resized = null;
+                        metrics.record(PerfMetrics.Stage.WRITE, start);
+                        showMetrics(metrics);
+                    });
+                    trajectory.markComplete();
+                    long elapsed = SystemClock.elapsedRealtime() - startTime;
+                    Log.i("##############gb", frames + " frames in " + elapsed + " ms, batch size " + POSE_BATCH_SIZE
+                            + ", " + POSE_WORKERS + "x" + POSE_THREADS + " threads"
+                            + ", " + (elapsed > 0 ? frames * 1000f / elapsed : 0) + " fps, "
+                            + mPipeline.getInferenceCount() + " inferences, " + mPipeline.getReusedCount()
+                            + " static keyframes skipped, " + mPipeline.getDetectionCount() + " person detections, "
+                            + mPipeline.getTrackedKeyframeCount() + " keyframes moved their track, "
+                            + mPipeline.getKeypointCropCount() + " cropped from tracked keypoints, "
+                            + cached_frames + " frames from cache, " + FramePool.get().getAllocationCount()
+                            + " frame buffers allocated and " + FramePool.get().getReuseCount() + " reused"
+                            + ", annotated video in " + video_file);
                 }
-
-                mPrintPointArray[0][i] = maxX / getRatio();
-                mPrintPointArray[1][i] = maxY / getRatio();
-                Log.i("##############gb i########", String.valueOf(i));
-                Log.i("##############gb maxX########", String.valueOf(mPrintPointArray[0][i]));
-                Log.i("##############gb maxY########", String.valueOf(mPrintPointArray[1][i]));
+                metrics.dump(new File(getFilesDir(), "pose-perf.txt"));
             }
+            mTrajectoryFile = trajectory_file;
+            matchActions(trajectory_file);
+        } catch (IOException | InterruptedException | IllegalStateException e) {
+            Log.e("##############gb", "Error processing mp4.", e);
+        } finally {
+            mPipeline = null;
+            cache.trim();
+        }
+        // gb add read mp4 end
 
-            //0-1
-            if (mPrintPointArray[0][0] > 0 && mPrintPointArray[1][0] > 0
-                    && mPrintPointArray[0][1] > 0 && mPrintPointArray[1][1] > 0) {
-                Imgproc.line(res_mat, new Point(mPrintPointArray[0][0], mPrintPointArray[1][0]),
-                        new Point(mPrintPointArray[0][1], mPrintPointArray[1][1]), new Scalar(0, 0, 255), 2);
-            }
-            //0-2
-            if (mPrintPointArray[0][0] > 0 && mPrintPointArray[1][0] > 0
-                    && mPrintPointArray[0][2] > 0 && mPrintPointArray[1][2] > 0) {
-                Imgproc.line(res_mat, new Point(mPrintPointArray[0][0], mPrintPointArray[1][0]),
-                        new Point(mPrintPointArray[0][2], mPrintPointArray[1][2]), new Scalar(0, 0, 255), 2);
-            }
-            //5-6
-            if (mPrintPointArray[0][5] > 0 && mPrintPointArray[1][5] > 0
-                    && mPrintPointArray[0][6] > 0 && mPrintPointArray[1][6] > 0) {
-                Imgproc.line(res_mat, new Point(mPrintPointArray[0][5], mPrintPointArray[1][5]),
-                        new Point(mPrintPointArray[0][6], mPrintPointArray[1][6]), new Scalar(0, 0, 255), 2);
-            }
-            //5-7
-            if (mPrintPointArray[0][5] > 0 && mPrintPointArray[1][5] > 0
-                    && mPrintPointArray[0][7] > 0 && mPrintPointArray[1][7] > 0) {
-                Imgproc.line(res_mat, new Point(mPrintPointArray[0][5], mPrintPointArray[1][5]),
-                        new Point(mPrintPointArray[0][7], mPrintPointArray[1][7]), new Scalar(0, 0, 255), 2);
-            }
-            //7-9
-            if (mPrintPointArray[0][7] > 0 && mPrintPointArray[1][7] > 0
-                    && mPrintPointArray[0][9] > 0 && mPrintPointArray[1][9] > 0) {
-                Imgproc.line(res_mat, new Point(mPrintPointArray[0][7], mPrintPointArray[1][7]),
-                        new Point(mPrintPointArray[0][9], mPrintPointArray[1][9]), new Scalar(0, 0, 255), 2);
-            }
-            //6-8
-            if (mPrintPointArray[0][6] > 0 && mPrintPointArray[1][6] > 0
-                    && mPrintPointArray[0][8] > 0 && mPrintPointArray[1][8] > 0) {
-                Imgproc.line(res_mat, new Point(mPrintPointArray[0][6], mPrintPointArray[1][6]),
-                        new Point(mPrintPointArray[0][8], mPrintPointArray[1][8]), new Scalar(0, 0, 255), 2);
-            }
-            //8-10
-            if (mPrintPointArray[0][8] > 0 && mPrintPointArray[1][8] > 0
-                    && mPrintPointArray[0][10] > 0 && mPrintPointArray[1][10] > 0) {
-                Imgproc.line(res_mat, new Point(mPrintPointArray[0][8], mPrintPointArray[1][8]),
-                        new Point(mPrintPointArray[0][10], mPrintPointArray[1][10]), new Scalar(0, 0, 255), 2);
-            }
-            //5-11
-            if (mPrintPointArray[0][5] > 0 && mPrintPointArray[1][5] > 0
-                    && mPrintPointArray[0][11] > 0 && mPrintPointArray[1][11] > 0) {
-                Imgproc.line(res_mat, new Point(mPrintPointArray[0][5], mPrintPointArray[1][5]),
-                        new Point(mPrintPointArray[0][11], mPrintPointArray[1][11]), new Scalar(0, 0, 255), 2);
-            }
-            //6-12
-            if (mPrintPointArray[0][6] > 0 && mPrintPointArray[1][6] > 0
-                    && mPrintPointArray[0][12] > 0 && mPrintPointArray[1][12] > 0) {
-                Imgproc.line(res_mat, new Point(mPrintPointArray[0][6], mPrintPointArray[1][6]),
-                        new Point(mPrintPointArray[0][12], mPrintPointArray[1][12]), new Scalar(0, 0, 255), 2);
+        runOnUiThread(() -> {
+            mButtonDetect.setEnabled(true);
+            mButtonDetect.setText(getString(R.string.detect));
+            mProgressBar.setVisibility(ProgressBar.INVISIBLE);
+        });
+    }
+
+    private static void configure(PoseVideoPipeline pipeline) {
+        pipeline.setBatchSize(POSE_BATCH_SIZE);
+        pipeline.setKeyframeInterval(POSE_KEYFRAME_INTERVAL);
+        pipeline.setMaxPeople(POSE_MAX_PEOPLE);
+        pipeline.setSmoothing(1.0f, 0.05f);
+        pipeline.setMotionGate(2.0f);
+    }
+
+    // analyzes every video in dir with the same settings as the detect button, logging a
+    // line per video; trajectories and reports end up in files/batch
+    private void runBatch(File dir, boolean stub) {
+        final ModelStore models = ModelStore.get(this);
+        final BatchAnalysisRunner runner = new BatchAnalysisRunner(model -> {
+            if (stub) {
+                return new StubBackend(ModelStore.POSE_MODEL.equals(model) ? StubBackend.Model.POSE : StubBackend.Model.DETECTOR);
             }
-            //11-13
-            if (mPrintPointArray[0][11] > 0 && mPrintPointArray[1][11] > 0
-                    && mPrintPointArray[0][13] > 0 && mPrintPointArray[1][13] > 0) {
-                Imgproc.line(res_mat, new Point(mPrintPointArray[0][11], mPrintPointArray[1][11]),
-                        new Point(mPrintPointArray[0][13], mPrintPointArray[1][13]), new Scalar(0, 0, 255), 2);
+            try {
+                models.await(model);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while loading " + model);
             }
-            //13-15
-            if (mPrintPointArray[0][13] > 0 && mPrintPointArray[1][13] > 0
-                    && mPrintPointArray[0][15] > 0 && mPrintPointArray[1][15] > 0) {
-                Imgproc.line(res_mat, new Point(mPrintPointArray[0][13], mPrintPointArray[1][13]),
-                        new Point(mPrintPointArray[0][15], mPrintPointArray[1][15]), new Scalar(0, 0, 255), 2);
+            return new ModuleBackend(LiteModuleLoader.load(models.getFile(model).getAbsolutePath()));
+        }, new File(getFilesDir(), "batch"));
+        runner.setParallelism(BATCH_PARALLELISM);
+        runner.setWorkers(POSE_WORKERS);
+        runner.setPipelineSetup(MainActivity::configure);
+        ModulePool.setNumThreads(Math.max(1, Runtime.getRuntime().availableProcessors() / (BATCH_PARALLELISM * POSE_WORKERS)));
+
+        mBatchRunner = runner;
+        try {
+            for (BatchAnalysisRunner.Report report : runner.run(dir)) {
+                Log.i("##############gb", "batch " + report.video + ": " + report.frames + " frames in "
+                        + report.elapsedMs + " ms, " + report.getFps() + " fps"
+                        + (report.error != null ? ", " + report.error : ""));
             }
-            //12-14
-            if (mPrintPointArray[0][12] > 0 && mPrintPointArray[1][12] > 0
-                    && mPrintPointArray[0][14] > 0 && mPrintPointArray[1][14] > 0) {
-                Imgproc.line(res_mat, new Point(mPrintPointArray[0][12], mPrintPointArray[1][12]),
-                        new Point(mPrintPointArray[0][14], mPrintPointArray[1][14]), new Scalar(0, 0, 255), 2);
+        } catch (IOException | InterruptedException e) {
+            Log.e("##############gb", "Batch analysis of " + dir + " failed", e);
+        } finally {
+            mBatchRunner = null;
+        }
+    }
+
+    private void showMetrics(PerfMetrics metrics) {
+        final long now = SystemClock.elapsedRealtime();
+        if (now - mOverlayTime < OVERLAY_INTERVAL_MS) {
+            return;
+        }
+        mOverlayTime = now;
+        final String[] summary = metrics.summary();
+        runOnUiThread(() -> {
+            mResultView.setOverlay(summary);
+            mResultView.setVisibility(View.VISIBLE);
+            mResultView.invalidate();
+        });
+    }
+
+    // frame rate stored in the container, 0 if unknown
+    private static double frameRate(String videoPath) {
+        VideoCapture video = new VideoCapture(videoPath);
+        try {
+            return video.isOpened() ? video.get(Videoio.CAP_PROP_FPS) : 0;
+        } finally {
+            video.release();
+        }
+    }
+
+    // true if the file holds the keypoints of every frame; the last frame ends up in mPrintPointArray
+    private boolean loadCachedTrajectory(File file) {
+        if (!file.exists()) {
+            return false;
+        }
+        try (TrajectoryReader reader = new TrajectoryReader(file)) {
+            if (!reader.isComplete()) {
+                return false;
             }
-            //14-16
-            if (mPrintPointArray[0][14] > 0 && mPrintPointArray[1][14] > 0
-                    && mPrintPointArray[0][16] > 0 && mPrintPointArray[1][16] > 0) {
-                Imgproc.line(res_mat, new Point(mPrintPointArray[0][14], mPrintPointArray[1][14]),
-                        new Point(mPrintPointArray[0][16], mPrintPointArray[1][16]), new Scalar(0, 0, 255), 2);
+            if (reader.getFrameCount() > 0) {
+                float[][] points = new float[3][reader.getNumKeypoints()];
+                reader.readFrame(reader.getFrameCount() - 1, points);
+                mPrintPointArray = points;
             }
-            Imgcodecs.imwrite(im_path, res_mat);
+            return true;
+        } catch (IOException e) {
+            Log.w("##############gb", "Ignoring unreadable cache entry " + file, e);
+            return false;
         }
-        // gb add read mp4 end
     }
 
-    private float get(int x, int y, float[] arr) {
-        if (x < 0 || y < 0 || x >= getOutputSizeX() || y >= getOutputSizeY())
-            return -1;
-        return arr[y * getOutputSizeX() + x];
-
-        /*runOnUiThread(() -> {
-            mButtonDetect.setEnabled(true);
-            mButtonDetect.setText(getString(R.string.detect));
-            mProgressBar.setVisibility(ProgressBar.INVISIBLE);
-            mResultView.setResults(results);
-            mResultView.invalidate();
-            mResultView.setVisibility(View.VISIBLE);
-        });*/
+    // logs the reference actions closest to the analyzed video
+    private void matchActions(File trajectory_file) throws IOException {
+        if (mActionLibrary == null) {
+            mActionLibrary = new ActionLibrary(mPoseNormalizer);
+            mActionLibrary.addAll(new File(getFilesDir(), "actions"));
+        }
+        if (mActionLibrary.size() == 0) {
+            return;
+        }
+        final long startTime = SystemClock.elapsedRealtime();
+        try (TrajectoryReader reader = new TrajectoryReader(trajectory_file)) {
+            List<ActionLibrary.Match> matches = mActionLibrary.search(mPoseNormalizer.normalize(reader), 3);
+            for (ActionLibrary.Match match : matches) {
+                Log.i("##############gb", "action " + match.name + " distance " + match.distance);
+            }
+        }
+        Log.i("##############gb", "searched " + mActionLibrary.size() + " actions in "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms");
     }
 }
@@ -0,0 +1,101 @@
+package org.pytorch.demo.objectdetection;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Writes a BGR video frame into a model input buffer without going through Bitmaps. The
+ * frame is resized by OpenCV, then every pixel is normalized the same way
+ * TensorImageUtils.bitmapToFloat32Tensor does, ((v / 255) - mean) / std, and stored as
+ * planar RGB (CHW). Normalization is a per channel lookup table, so the inner loop is a
+ * table read and a store.
+ *
+ * Scratch buffers are reused between calls; a converter must not be shared between threads.
+ */
+public class MatTensorConverter {
+    private final int mWidth;
+    private final int mHeight;
+    private final Size mSize;
+    private final byte[] mPixels;
+    private final float[] mChw;
+    // [channel][pixel value], channels in RGB order
+    private final float[][] mLut = new float[3][256];
+    // 2x3 affine transform for region crops, created by the first one
+    private Mat mTransform;
+    private final Scalar mBorder = new Scalar(0, 0, 0);
+
+    public MatTensorConverter(int width, int height, float[] normMeanRGB, float[] normStdRGB) {
+        mWidth = width;
+        mHeight = height;
+        mSize = new Size(width, height);
+        mPixels = new byte[width * height * 3];
+        mChw = new float[width * height * 3];
+        for (int c = 0; c < 3; c++) {
+            for (int v = 0; v < 256; v++) {
+                mLut[c][v] = (v / 255.0f - normMeanRGB[c]) / normStdRGB[c];
+            }
+        }
+    }
+
+    /**
+     * Resizes {@code bgr} into {@code resized}, which is (re)allocated as a CV_8UC3 Mat of the
+     * model input size and can be drawn on afterwards, and writes the normalized CHW floats
+     * to {@code out} starting at {@code offset}.
+     */
+    public void convert(Mat bgr, Mat resized, FloatBuffer out, int offset) {
+        Imgproc.resize(bgr, resized, mSize, 0, 0, Imgproc.INTER_LINEAR);
+        if (resized.type() != CvType.CV_8UC3) {
+            throw new IllegalArgumentException("Expected a CV_8UC3 frame, got " + CvType.typeToString(resized.type()));
+        }
+        resized.get(0, 0, mPixels);
+        write(out, offset);
+    }
+
+    /**
+     * Warps the region of {@code bgr} covered by {@code roi} into {@code crop}, at the model
+     * input size with black padding outside the frame, and writes it like {@link #convert}.
+     * The converter's size must be the pose model input size the region was made for.
+     */
+    public void convert(Mat bgr, PersonRoi roi, Mat crop, FloatBuffer out, int offset) {
+        if (mTransform == null) {
+            mTransform = new Mat(2, 3, CvType.CV_64F);
+        }
+        mTransform.put(0, 0,
+                roi.scale, 0, mWidth / 2.0 - roi.scale * roi.centerX,
+                0, roi.scale, mHeight / 2.0 - roi.scale * roi.centerY);
+        Imgproc.warpAffine(bgr, crop, mTransform, mSize, Imgproc.INTER_LINEAR, Core.BORDER_CONSTANT, mBorder);
+        if (crop.type() != CvType.CV_8UC3) {
+            throw new IllegalArgumentException("Expected a CV_8UC3 frame, got " + CvType.typeToString(crop.type()));
+        }
+        crop.get(0, 0, mPixels);
+        write(out, offset);
+    }
+
+    /** Only the resize of {@link #convert}, for frames that are drawn on but not inferred. */
+    public void resize(Mat bgr, Mat resized) {
+        Imgproc.resize(bgr, resized, mSize, 0, 0, Imgproc.INTER_LINEAR);
+    }
+
+    private void write(FloatBuffer out, int offset) {
+        final byte[] pixels = mPixels;
+        final float[] chw = mChw;
+        final float[] lutR = mLut[0];
+        final float[] lutG = mLut[1];
+        final float[] lutB = mLut[2];
+        final int planeSize = mWidth * mHeight;
+        for (int i = 0, p = 0; i < planeSize; i++, p += 3) {
+            chw[i] = lutR[pixels[p + 2] & 0xFF];
+            chw[planeSize + i] = lutG[pixels[p + 1] & 0xFF];
+            chw[2 * planeSize + i] = lutB[pixels[p] & 0xFF];
+        }
+        out.position(offset);
+        out.put(chw);
+        out.rewind();
+    }
+}
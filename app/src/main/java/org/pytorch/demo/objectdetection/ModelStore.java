@@ -0,0 +1,167 @@
+package org.pytorch.demo.objectdetection;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.pytorch.IValue;
+import org.pytorch.LiteModuleLoader;
+import org.pytorch.Module;
+import org.pytorch.Tensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Process-wide holder of the models. The first {@link #get} starts a background thread that
+ * extracts every model from the assets, loads it and runs one warm-up forward pass, so the
+ * one-time setup of the interpreter happens before any activity needs the model. Models are
+ * prepared in the order they are registered, the pose model first. A model that fails is
+ * logged once and reported by {@link #getError} until it is {@link #retry retried}.
+ */
+public class ModelStore {
+    private static final String TAG = "ModelStore";
+
+    static final String POSE_MODEL = PrePostProcessor.POSE_MODEL;
+    static final String DETECTION_MODEL = PrePostProcessor.DETECTION_MODEL;
+
+    private static ModelStore sInstance;
+
+    private final Context mContext;
+    private final Map<String, FutureTask<Module>> mModules = new LinkedHashMap<>();
+    private final Map<String, long[]> mInputShapes = new HashMap<>();
+    private final Map<String, File> mFiles = new ConcurrentHashMap<>();
+
+    public static synchronized ModelStore get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ModelStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ModelStore(Context context) {
+        mContext = context;
+        register(POSE_MODEL, 1, 3, PrePostProcessor.mInputHeight, PrePostProcessor.mInputWidth);
+        register(DETECTION_MODEL, 1, 3, PrePostProcessor.mDetectorInputHeight, PrePostProcessor.mDetectorInputWidth);
+        start(new ArrayList<>(mModules.values()));
+    }
+
+    /** The module if it is loaded and warmed up, null while it is still being prepared or failed. */
+    public Module peek(String asset) {
+        FutureTask<Module> task = task(asset);
+        if (!task.isDone()) {
+            return null;
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException | InterruptedException e) {
+            return null;
+        }
+    }
+
+    /** Why the module could not be prepared, null while it is being prepared or once it is ready. */
+    public Throwable getError(String asset) {
+        FutureTask<Module> task = task(asset);
+        if (!task.isDone()) {
+            return null;
+        }
+        try {
+            task.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (InterruptedException e) {
+            // cannot happen, the task is done, but keep the interrupt for the caller
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /** Prepares a module that failed once more, in the background. Does nothing otherwise. */
+    public synchronized void retry(String asset) {
+        if (getError(asset) == null) {
+            return;
+        }
+        FutureTask<Module> task = newTask(asset);
+        mModules.put(asset, task);
+        start(Collections.singletonList(task));
+    }
+
+    /** Waits for the module to be loaded and warmed up. */
+    public Module await(String asset) throws IOException, InterruptedException {
+        try {
+            return task(asset).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Cannot load " + asset, e.getCause());
+        }
+    }
+
+    /** Extracted model file, available once {@link #await} returned. */
+    public File getFile(String asset) {
+        return mFiles.get(asset);
+    }
+
+    private synchronized FutureTask<Module> task(String asset) {
+        FutureTask<Module> task = mModules.get(asset);
+        if (task == null) {
+            throw new IllegalArgumentException("Unknown model " + asset);
+        }
+        return task;
+    }
+
+    private void register(String asset, long... inputShape) {
+        mInputShapes.put(asset, inputShape);
+        mModules.put(asset, newTask(asset));
+    }
+
+    private void start(final Collection<FutureTask<Module>> tasks) {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            for (FutureTask<Module> task : tasks) {
+                task.run();
+            }
+        }, "model-store");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private FutureTask<Module> newTask(final String asset) {
+        final long[] inputShape = mInputShapes.get(asset);
+        return new FutureTask<>(() -> {
+            try {
+                final long startTime = SystemClock.elapsedRealtime();
+                final File file = new File(MainActivity.assetFilePath(mContext, asset));
+                final long extracted = SystemClock.elapsedRealtime();
+                final Module module = LiteModuleLoader.load(file.getAbsolutePath());
+                final long loaded = SystemClock.elapsedRealtime();
+
+                long size = 1;
+                for (long dim : inputShape) {
+                    size *= dim;
+                }
+                module.forward(IValue.from(Tensor.fromBlob(new float[(int) size], inputShape)));
+
+                mFiles.put(asset, file);
+                Log.i(TAG, asset + " ready: extracted in " + (extracted - startTime) + " ms, loaded in "
+                        + (loaded - extracted) + " ms, warmed up in " + (SystemClock.elapsedRealtime() - loaded) + " ms");
+                return module;
+            } catch (Throwable e) {
+                Log.e(TAG, "Cannot prepare " + asset, e);
+                throw e;
+            }
+        });
+    }
+}
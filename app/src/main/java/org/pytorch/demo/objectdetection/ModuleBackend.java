@@ -0,0 +1,25 @@
+package org.pytorch.demo.objectdetection;
+
+import org.pytorch.IValue;
+import org.pytorch.Module;
+import org.pytorch.Tensor;
+
+import java.nio.FloatBuffer;
+
+/** Runs a loaded PyTorch Lite module; models returning a tuple yield its first tensor. */
+public class ModuleBackend implements InferenceBackend {
+    private final Module mModule;
+
+    public ModuleBackend(Module module) {
+        mModule = module;
+    }
+
+    @Override
+    public float[] forward(FloatBuffer input, long[] shape) {
+        IValue output = mModule.forward(IValue.from(Tensor.fromBlob(input, shape)));
+        if (output.isTuple()) {
+            output = output.toTuple()[0];
+        }
+        return output.toTensor().getDataAsFloatArray();
+    }
+}
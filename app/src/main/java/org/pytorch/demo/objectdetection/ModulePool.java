@@ -0,0 +1,55 @@
+package org.pytorch.demo.objectdetection;
+
+import org.pytorch.LiteModuleLoader;
+import org.pytorch.Module;
+import org.pytorch.PyTorchAndroid;
+
+/**
+ * Several loaded instances of one model, so that {@link PoseVideoPipeline} can run one
+ * inference worker per instance. Every worker owns its instance; no module is called from
+ * two threads.
+ *
+ * The intra-op thread count set with {@link #setNumThreads} is process-wide and shared by
+ * all instances, so pool size and thread count trade against each other: on a phone with 8
+ * cores, 4 workers with 2 threads each usually beat 1 worker with 8 threads for throughput,
+ * at the cost of latency and memory. Measure both on the target device.
+ */
+public class ModulePool {
+    private final Module[] mModules;
+
+    /**
+     * Loads {@code size} instances of the model at {@code modelPath}. None of them is the
+     * instance {@link ModelStore} hands to the activities, which run it on their own threads.
+     */
+    public ModulePool(String modelPath, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be positive: " + size);
+        }
+        mModules = new Module[size];
+        for (int i = 0; i < size; i++) {
+            mModules[i] = LiteModuleLoader.load(modelPath);
+        }
+    }
+
+    /** Threads each forward call may use for intra-op parallelism, for every module in the process. */
+    public static void setNumThreads(int numThreads) {
+        PyTorchAndroid.setNumThreads(numThreads);
+    }
+
+    public int size() {
+        return mModules.length;
+    }
+
+    public Module get(int index) {
+        return mModules[index];
+    }
+
+    /** A backend per module, in pool order, as {@link PoseVideoPipeline} takes them. */
+    public InferenceBackend[] getBackends() {
+        final InferenceBackend[] backends = new InferenceBackend[mModules.length];
+        for (int i = 0; i < backends.length; i++) {
+            backends[i] = new ModuleBackend(mModules[i]);
+        }
+        return backends;
+    }
+}
@@ -0,0 +1,122 @@
+package org.pytorch.demo.objectdetection;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides whether a frame differs enough from the last analyzed one to be worth a model
+ * call. Every frame is reduced to a small grayscale thumbnail and compared with the
+ * thumbnail of the last frame that passed the gate; if the mean absolute difference stays
+ * below the threshold the frame is reported static and its caller can reuse the previous
+ * result. Comparing against the last analyzed frame rather than the previous one keeps a
+ * slow drift from slipping through, and after a number of static frames in a row one frame
+ * is let through anyway.
+ *
+ * A gate keeps the reference thumbnail and must only be used from one thread.
+ */
+public class MotionGate {
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 24;
+    private static final Size THUMBNAIL_SIZE = new Size(WIDTH, HEIGHT);
+
+    private final float mThreshold;
+    private int mMaxStaticFrames = 30;
+    private final byte[] mThumbnail = new byte[WIDTH * HEIGHT];
+    private final byte[] mReference = new byte[WIDTH * HEIGHT];
+    private boolean mHasReference;
+    private int mStaticFrames;
+    private volatile int mChecked;
+    private volatile int mSkipped;
+
+    // only used by isStatic(Mat)
+    private Mat mGray;
+    private Mat mSmall;
+
+    /**
+     * @param threshold mean absolute difference in gray levels (0-255) below which a frame
+     *                  counts as static
+     */
+    public MotionGate(float threshold) {
+        mThreshold = threshold;
+    }
+
+    /** Static frames in a row after which one frame is analyzed regardless. */
+    public void setMaxStaticFrames(int maxStaticFrames) {
+        mMaxStaticFrames = maxStaticFrames;
+    }
+
+    /** Gates a decoded BGR video frame. */
+    public boolean isStatic(Mat bgr) {
+        if (mGray == null) {
+            mGray = new Mat();
+            mSmall = new Mat();
+        }
+        Imgproc.cvtColor(bgr, mGray, Imgproc.COLOR_BGR2GRAY);
+        Imgproc.resize(mGray, mSmall, THUMBNAIL_SIZE, 0, 0, Imgproc.INTER_AREA);
+        mSmall.get(0, 0, mThumbnail);
+        return check();
+    }
+
+    /**
+     * Gates a camera frame by its luma plane, sampling the thumbnail straight from the plane
+     * buffer.
+     */
+    public boolean isStatic(ByteBuffer luma, int rowStride, int pixelStride, int width, int height) {
+        final int cellWidth = width / WIDTH;
+        final int cellHeight = height / HEIGHT;
+        for (int ty = 0; ty < HEIGHT; ty++) {
+            // four samples per cell, at a quarter and three quarters of its width and height
+            final int y0 = ty * cellHeight + cellHeight / 4;
+            final int y1 = ty * cellHeight + cellHeight * 3 / 4;
+            for (int tx = 0; tx < WIDTH; tx++) {
+                final int x0 = (tx * cellWidth + cellWidth / 4) * pixelStride;
+                final int x1 = (tx * cellWidth + cellWidth * 3 / 4) * pixelStride;
+                final int sum = (luma.get(y0 * rowStride + x0) & 0xff) + (luma.get(y0 * rowStride + x1) & 0xff)
+                        + (luma.get(y1 * rowStride + x0) & 0xff) + (luma.get(y1 * rowStride + x1) & 0xff);
+                mThumbnail[ty * WIDTH + tx] = (byte) (sum >> 2);
+            }
+        }
+        return check();
+    }
+
+    /** Frames checked so far. */
+    public int getCheckedCount() {
+        return mChecked;
+    }
+
+    /** Frames reported static so far, each one a skipped inference. */
+    public int getSkippedCount() {
+        return mSkipped;
+    }
+
+    public void release() {
+        if (mGray != null) {
+            mGray.release();
+            mSmall.release();
+            mGray = null;
+            mSmall = null;
+        }
+    }
+
+    private boolean check() {
+        mChecked++;
+        if (mHasReference && mStaticFrames < mMaxStaticFrames) {
+            int sum = 0;
+            for (int i = 0; i < mThumbnail.length; i++) {
+                sum += Math.abs((mThumbnail[i] & 0xff) - (mReference[i] & 0xff));
+            }
+            if (sum < mThreshold * mThumbnail.length) {
+                mStaticFrames++;
+                mSkipped++;
+                return true;
+            }
+        }
+        System.arraycopy(mThumbnail, 0, mReference, 0, mThumbnail.length);
+        mHasReference = true;
+        mStaticFrames = 0;
+        return false;
+    }
+}
@@ -1,13 +1,6 @@
 package org.pytorch.demo.objectdetection;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
-import android.graphics.Matrix;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
-import android.media.Image;
-import android.util.Log;
+import android.os.SystemClock;
 import android.view.TextureView;
 import android.view.ViewStub;
 
@@ -16,25 +9,30 @@ import androidx.annotation.WorkerThread;
 import androidx.camera.core.ImageProxy;
 
 import org.pytorch.IValue;
-import org.pytorch.LiteModuleLoader;
 import org.pytorch.Module;
 import org.pytorch.Tensor;
-import org.pytorch.torchvision.TensorImageUtils;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 public class ObjectDetectionActivity extends AbstractCameraXActivity<ObjectDetectionActivity.AnalysisResult> {
     private Module mModule = null;
     private ResultView mResultView;
+    private YuvTensorConverter mTensorConverter;
+    private final PerfMetrics mMetrics = new PerfMetrics();
+    // last overlay refresh, only touched by the UI thread
+    private long mOverlayTime;
 
+    // the boxes go straight to the view from the analyzer thread, this only marks a finished frame
     static class AnalysisResult {
-        private final ArrayList<Result> mResults;
+    }
 
-        public AnalysisResult(ArrayList<Result> results) {
-            mResults = results;
+    @Override
+    protected void onDestroy() {
+        // stops the analyzer thread, nothing uses the converter after that
+        super.onDestroy();
+        if (mTensorConverter != null) {
+            mTensorConverter.release();
+            mTensorConverter = null;
         }
     }
 
@@ -53,62 +51,49 @@ public class ObjectDetectionActivity extends AbstractCameraXActivity<ObjectDetec
 
     @Override
     protected void applyToUiAnalyzeImageResult(AnalysisResult result) {
-        mResultView.setResults(result.mResults);
-        mResultView.invalidate();
-    }
-
-    private Bitmap imgToBitmap(Image image) {
-        Image.Plane[] planes = image.getPlanes();
-        ByteBuffer yBuffer = planes[0].getBuffer();
-        ByteBuffer uBuffer = planes[1].getBuffer();
-        ByteBuffer vBuffer = planes[2].getBuffer();
-
-        int ySize = yBuffer.remaining();
-        int uSize = uBuffer.remaining();
-        int vSize = vBuffer.remaining();
-
-        byte[] nv21 = new byte[ySize + uSize + vSize];
-        yBuffer.get(nv21, 0, ySize);
-        vBuffer.get(nv21, ySize, vSize);
-        uBuffer.get(nv21, ySize + vSize, uSize);
-
-        YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, image.getWidth(), image.getHeight(), null);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        yuvImage.compressToJpeg(new Rect(0, 0, yuvImage.getWidth(), yuvImage.getHeight()), 75, out);
-
-        byte[] imageBytes = out.toByteArray();
-        return BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
+        final long now = SystemClock.elapsedRealtime();
+        if (now - mOverlayTime >= 500) {
+            mOverlayTime = now;
+            mResultView.setOverlay(mMetrics.summary());
+            mResultView.invalidate();
+        }
     }
 
     @Override
     @WorkerThread
     @Nullable
     protected AnalysisResult analyzeImage(ImageProxy image, int rotationDegrees) {
-        try {
+        if (mModule == null) {
+            // skip frames until the model store has the detector ready instead of loading it here
+            mModule = peekModel(ModelStore.DETECTION_MODEL);
             if (mModule == null) {
-                mModule = LiteModuleLoader.load(MainActivity.assetFilePath(getApplicationContext(), "yolov5s.torchscript.ptl"));
+                return null;
             }
-        } catch (IOException e) {
-            Log.e("Object Detection", "Error reading assets", e);
-            return null;
         }
-        Bitmap bitmap = imgToBitmap(image.getImage());
-        Matrix matrix = new Matrix();
-        matrix.postRotate(90.0f);
-        bitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-        Bitmap resizedBitmap = Bitmap.createScaledBitmap(bitmap, PrePostProcessor.mInputWidth, PrePostProcessor.mInputHeight, true);
-
-        final Tensor inputTensor = TensorImageUtils.bitmapToFloat32Tensor(resizedBitmap, PrePostProcessor.NO_MEAN_RGB, PrePostProcessor.NO_STD_RGB);
+        if (mTensorConverter == null) {
+            mTensorConverter = new YuvTensorConverter(PrePostProcessor.mDetectorInputWidth, PrePostProcessor.mDetectorInputHeight, PrePostProcessor.NO_MEAN_RGB, PrePostProcessor.NO_STD_RGB);
+        }
+        long start = PerfMetrics.now();
+        final Tensor inputTensor = mTensorConverter.convert(image, rotationDegrees);
+        final int width = mTensorConverter.getRotatedWidth();
+        final int height = mTensorConverter.getRotatedHeight();
+        mMetrics.record(PerfMetrics.Stage.PREPROCESS, start);
+        start = PerfMetrics.now();
         IValue[] outputTuple = mModule.forward(IValue.from(inputTensor)).toTuple();
+        mMetrics.record(PerfMetrics.Stage.FORWARD, start);
+        start = PerfMetrics.now();
         final Tensor outputTensor = outputTuple[0].toTensor();
         final float[] outputs = outputTensor.getDataAsFloatArray();
 
-        float imgScaleX = (float)bitmap.getWidth() / PrePostProcessor.mInputWidth;
-        float imgScaleY = (float)bitmap.getHeight() / PrePostProcessor.mInputHeight;
-        float ivScaleX = (float)mResultView.getWidth() / bitmap.getWidth();
-        float ivScaleY = (float)mResultView.getHeight() / bitmap.getHeight();
+        float imgScaleX = (float)width / PrePostProcessor.mDetectorInputWidth;
+        float imgScaleY = (float)height / PrePostProcessor.mDetectorInputHeight;
+        float ivScaleX = (float)mResultView.getWidth() / width;
+        float ivScaleY = (float)mResultView.getHeight() / height;
 
         final ArrayList<Result> results = PrePostProcessor.outputsToNMSPredictions(outputs, imgScaleX, imgScaleY, ivScaleX, ivScaleY, 0, 0);
-        return new AnalysisResult(results);
+        mResultView.setResults(results);
+        mMetrics.record(PerfMetrics.Stage.POSTPROCESS, start);
+        mMetrics.frame();
+        return new AnalysisResult();
     }
 }
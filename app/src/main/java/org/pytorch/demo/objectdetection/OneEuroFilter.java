@@ -0,0 +1,87 @@
+package org.pytorch.demo.objectdetection;
+
+import java.util.Arrays;
+
+/**
+ * One-Euro filter (Casiez et al., CHI 2012) over the keypoint coordinates of a pose stream.
+ * Each coordinate is low-pass filtered with a cutoff that rises with its speed: a joint at
+ * rest is smoothed strongly, which removes the heatmap cell jitter, while a fast moving joint
+ * is followed with little lag.
+ *
+ * Scores pass through unchanged, and a missing keypoint (score 0) is left alone and starts
+ * over when it is found again. A filter keeps per-joint state and belongs to one stream.
+ */
+public class OneEuroFilter {
+    private final int mNumKeypoints;
+    private final float mMinCutoff;
+    private final float mBeta;
+    private final float mDerivativeCutoff;
+
+    // [0] x, [1] y of every keypoint: filtered value and filtered speed
+    private final float[][] mValue;
+    private final float[][] mSpeed;
+    private final boolean[] mTracked;
+    private double mLastTimestampMs = Double.NaN;
+
+    /**
+     * @param minCutoff cutoff frequency in Hz at rest; lower is smoother
+     * @param beta      how fast the cutoff grows with speed, in Hz per pixel per second;
+     *                  higher lags less
+     */
+    public OneEuroFilter(int numKeypoints, float minCutoff, float beta) {
+        mNumKeypoints = numKeypoints;
+        mMinCutoff = minCutoff;
+        mBeta = beta;
+        mDerivativeCutoff = 1.0f;
+        mValue = new float[2][numKeypoints];
+        mSpeed = new float[2][numKeypoints];
+        mTracked = new boolean[numKeypoints];
+    }
+
+    public void reset() {
+        mLastTimestampMs = Double.NaN;
+        Arrays.fill(mTracked, false);
+    }
+
+    /**
+     * Filters x and y of {@code points} in place.
+     *
+     * @param timestampMs frame time; frames without a usable time are taken 1/30 s apart
+     */
+    public void filter(float[][] points, double timestampMs) {
+        double dt = (timestampMs - mLastTimestampMs) / 1000;
+        if (!(dt > 0)) {
+            dt = 1.0 / 30;
+        }
+        mLastTimestampMs = timestampMs;
+
+        final float derivativeAlpha = alpha(mDerivativeCutoff, dt);
+        for (int j = 0; j < mNumKeypoints; j++) {
+            if (points[2][j] <= 0) {
+                mTracked[j] = false;
+                continue;
+            }
+            if (!mTracked[j]) {
+                for (int axis = 0; axis < 2; axis++) {
+                    mValue[axis][j] = points[axis][j];
+                    mSpeed[axis][j] = 0;
+                }
+                mTracked[j] = true;
+                continue;
+            }
+            for (int axis = 0; axis < 2; axis++) {
+                final float in = points[axis][j];
+                final float rawSpeed = (float) ((in - mValue[axis][j]) / dt);
+                mSpeed[axis][j] += derivativeAlpha * (rawSpeed - mSpeed[axis][j]);
+                final float cutoff = mMinCutoff + mBeta * Math.abs(mSpeed[axis][j]);
+                mValue[axis][j] += alpha(cutoff, dt) * (in - mValue[axis][j]);
+                points[axis][j] = mValue[axis][j];
+            }
+        }
+    }
+
+    private static float alpha(float cutoff, double dt) {
+        final double tau = 1 / (2 * Math.PI * cutoff);
+        return (float) (1 / (1 + tau / dt));
+    }
+}
@@ -0,0 +1,219 @@
+package org.pytorch.demo.objectdetection;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.util.Locale;
+
+/**
+ * Latency histograms per processing stage plus frame rate and allocation tracking. Stages
+ * time themselves with {@link #now} and {@link #record}; every finished frame calls
+ * {@link #frame}. Everything is lock-free and cheap enough to stay on in release builds, so
+ * per-frame logging is not needed to see where the time goes.
+ *
+ * Allocations are the bytes the runtime allocated between two frames, on all threads, as
+ * reported by the ART statistic {@code art.gc.bytes-allocated}. On a JVM they are the sum
+ * over the live threads from com.sun.management.ThreadMXBean, so a thread that ended between
+ * two frames takes its bytes with it; they are not tracked on runtimes with neither.
+ */
+public class PerfMetrics {
+    public enum Stage {
+        DECODE, DETECT, PREPROCESS, FORWARD, POSTPROCESS, DRAW, WRITE
+    }
+
+    private static final String BYTES_ALLOCATED = "art.gc.bytes-allocated";
+
+    private final Histogram[] mStages = new Histogram[Stage.values().length];
+    private final Histogram mFrameInterval = new Histogram();
+    private final Histogram mFrameAllocations = new Histogram();
+    private final long mStartNanos = System.nanoTime();
+    // last frame end and allocated bytes, only touched by the thread calling frame()
+    private volatile long mLastFrameNanos;
+    private long mLastAllocated = -1;
+    private boolean mTrackAllocations = true;
+    // frame count and time of the last summary, only touched by the thread calling summary()
+    private long mSummaryFrames;
+    private long mSummaryTime;
+
+    public PerfMetrics() {
+        for (int i = 0; i < mStages.length; i++) {
+            mStages[i] = new Histogram();
+        }
+    }
+
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /** Records the time since {@code startNanos}, taken from {@link #now}, for {@code stage}. */
+    public void record(Stage stage, long startNanos) {
+        mStages[stage.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /** Marks the end of a frame. Must always be called from the same thread. */
+    public void frame() {
+        final long now = System.nanoTime();
+        if (mLastFrameNanos != 0) {
+            mFrameInterval.record(now - mLastFrameNanos);
+        }
+        mLastFrameNanos = now;
+
+        if (mTrackAllocations) {
+            final long allocated = bytesAllocated();
+            if (allocated < 0) {
+                mTrackAllocations = false;
+            } else {
+                if (mLastAllocated >= 0) {
+                    mFrameAllocations.record(Math.max(allocated - mLastAllocated, 0));
+                }
+                mLastAllocated = allocated;
+            }
+        }
+    }
+
+    public Histogram getStage(Stage stage) {
+        return mStages[stage.ordinal()];
+    }
+
+    public long getFrameCount() {
+        return mFrameInterval.getCount() + (mLastFrameNanos != 0 ? 1 : 0);
+    }
+
+    /**
+     * Short text for an overlay: the frame rate since the previous call, then p50/p95/p99
+     * in ms of every stage that has samples, one per line.
+     */
+    public String[] summary() {
+        final long time = System.nanoTime();
+        final long frames = getFrameCount();
+        final float fps = mSummaryTime != 0 && time - mSummaryTime > 0
+                ? (frames - mSummaryFrames) * 1e9f / (time - mSummaryTime) : 0;
+        mSummaryFrames = frames;
+        mSummaryTime = time;
+
+        int lines = 1;
+        for (Histogram histogram : mStages) {
+            if (histogram.getCount() > 0) {
+                lines++;
+            }
+        }
+        final String[] summary = new String[lines];
+        summary[0] = String.format(Locale.US, "%.1f FPS  p50/p95/p99 ms", fps);
+        int line = 1;
+        for (Stage stage : Stage.values()) {
+            final Histogram histogram = mStages[stage.ordinal()];
+            if (histogram.getCount() > 0) {
+                summary[line++] = String.format(Locale.US, "%-11s %6.1f %6.1f %6.1f", stage.name().toLowerCase(Locale.US),
+                        ms(histogram.getPercentile(0.5)), ms(histogram.getPercentile(0.95)), ms(histogram.getPercentile(0.99)));
+            }
+        }
+        return summary;
+    }
+
+    /** Writes every histogram to {@code file}, replacing it. */
+    public void dump(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            final long elapsed = (System.nanoTime() - mStartNanos) / 1000000;
+            final long frames = getFrameCount();
+            out.printf(Locale.US, "frames %d in %d ms, %.2f FPS%n", frames, elapsed, elapsed > 0 ? frames * 1000f / elapsed : 0);
+            out.printf(Locale.US, "%-14s %8s %8s %8s %8s %8s %8s%n", "ms", "count", "mean", "p50", "p95", "p99", "max");
+            for (Stage stage : Stage.values()) {
+                print(out, stage.name().toLowerCase(Locale.US), mStages[stage.ordinal()], 1e-6);
+            }
+            print(out, "frame", mFrameInterval, 1e-6);
+            if (mFrameAllocations.getCount() > 0) {
+                out.printf(Locale.US, "%-14s %8s %8s %8s %8s %8s %8s%n", "KB", "count", "mean", "p50", "p95", "p99", "max");
+                print(out, "allocated", mFrameAllocations, 1.0 / 1024);
+            }
+        }
+    }
+
+    private static void print(PrintWriter out, String name, Histogram histogram, double scale) {
+        out.printf(Locale.US, "%-14s %8d %8.2f %8.2f %8.2f %8.2f %8.2f%n", name, histogram.getCount(),
+                histogram.getMean() * scale, histogram.getPercentile(0.5) * scale, histogram.getPercentile(0.95) * scale,
+                histogram.getPercentile(0.99) * scale, histogram.getMax() * scale);
+    }
+
+    private static float ms(long nanos) {
+        return nanos / 1e6f;
+    }
+
+    private static long bytesAllocated() {
+        return Platform.ANDROID ? ArtAllocations.bytesAllocated() : JvmAllocations.bytesAllocated();
+    }
+
+    // only loaded on Android; android.os.Debug by reflection, so this builds without the SDK
+    private static final class ArtAllocations {
+        private static final Method sRuntimeStat;
+
+        static {
+            Method runtimeStat = null;
+            try {
+                runtimeStat = Class.forName("android.os.Debug").getMethod("getRuntimeStat", String.class);
+            } catch (ReflectiveOperationException e) {
+                // not tracked
+            }
+            sRuntimeStat = runtimeStat;
+        }
+
+        static long bytesAllocated() {
+            if (sRuntimeStat == null) {
+                return -1;
+            }
+            try {
+                final String value = (String) sRuntimeStat.invoke(null, BYTES_ALLOCATED);
+                return value != null ? Long.parseLong(value) : -1;
+            } catch (ReflectiveOperationException | NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    // java.lang.management is not part of the Android API, so it is only reached by reflection
+    private static final class JvmAllocations {
+        private static final Object sThreads;
+        private static final Method sAllThreadIds;
+        private static final Method sAllocatedBytes;
+
+        static {
+            Object threads = null;
+            Method allThreadIds = null;
+            Method allocatedBytes = null;
+            try {
+                final Object bean = Class.forName("java.lang.management.ManagementFactory")
+                        .getMethod("getThreadMXBean").invoke(null);
+                final Class<?> sunBean = Class.forName("com.sun.management.ThreadMXBean");
+                if (sunBean.isInstance(bean)) {
+                    threads = bean;
+                    allThreadIds = sunBean.getMethod("getAllThreadIds");
+                    allocatedBytes = sunBean.getMethod("getThreadAllocatedBytes", long[].class);
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // not tracked
+            }
+            sThreads = threads;
+            sAllThreadIds = allThreadIds;
+            sAllocatedBytes = allocatedBytes;
+        }
+
+        static long bytesAllocated() {
+            if (sThreads == null) {
+                return -1;
+            }
+            try {
+                long total = 0;
+                for (long bytes : (long[]) sAllocatedBytes.invoke(sThreads, sAllThreadIds.invoke(sThreads))) {
+                    // -1 for threads that ended since the ids were taken, or when disabled
+                    if (bytes > 0) {
+                        total += bytes;
+                    }
+                }
+                return total;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.pytorch.demo.objectdetection;
+
+import org.opencv.core.Mat;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Finds people in a BGR frame with YOLOv5, through the same decoding and NMS as the live
+ * object detection. Scratch buffers are reused between calls; a detector must not be shared
+ * between threads.
+ */
+public class PersonDetector {
+    // index of "person" in classes.txt
+    static final int PERSON_CLASS = 0;
+
+    private final InferenceBackend mBackend;
+    private final MatTensorConverter mConverter = new MatTensorConverter(PrePostProcessor.mDetectorInputWidth,
+            PrePostProcessor.mDetectorInputHeight, PrePostProcessor.NO_MEAN_RGB, PrePostProcessor.NO_STD_RGB);
+    // taken from the pool on the first detection, a detector that never runs holds none
+    private FloatBuffer mInput;
+    private final long[] mShape = {1, 3, PrePostProcessor.mDetectorInputHeight, PrePostProcessor.mDetectorInputWidth};
+    private final YoloDecoder mDecoder = PrePostProcessor.newDecoder();
+    private final NonMaxSuppression mNms = new NonMaxSuppression();
+    private final Mat mResized = new Mat();
+    private int mDetections;
+
+    /** @param backend runs YOLOv5 */
+    public PersonDetector(InferenceBackend backend) {
+        mBackend = backend;
+    }
+
+    /** Person boxes in frame pixels, best score first. */
+    public ArrayList<Result> detect(Mat bgr) {
+        if (mInput == null) {
+            mInput = FramePool.get().acquireFloatBuffer(
+                    3 * PrePostProcessor.mDetectorInputWidth * PrePostProcessor.mDetectorInputHeight);
+        }
+        mConverter.convert(bgr, mResized, mInput, 0);
+        final float[] outputs = mBackend.forward(mInput, mShape);
+        mDetections++;
+        final ArrayList<Result> results = PrePostProcessor.outputsToNMSPredictions(mDecoder, mNms, outputs,
+                (float) bgr.cols() / PrePostProcessor.mDetectorInputWidth,
+                (float) bgr.rows() / PrePostProcessor.mDetectorInputHeight, 1, 1, 0, 0);
+        for (Iterator<Result> it = results.iterator(); it.hasNext(); ) {
+            if (it.next().classIndex != PERSON_CLASS) {
+                it.remove();
+            }
+        }
+        return results;
+    }
+
+    /** Forward calls made so far. */
+    public int getDetectionCount() {
+        return mDetections;
+    }
+
+    public void release() {
+        mResized.release();
+        if (mInput != null) {
+            FramePool.get().release(mInput);
+            mInput = null;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.pytorch.demo.objectdetection;
+
+/**
+ * Region of a frame that holds one person, as fed to the pose model. The person box is
+ * grown around its center to the model's input aspect ratio and by a margin, so the crop
+ * keeps the person undistorted with some context; where the region reaches past the frame
+ * the crop is padded with black. The region maps frame pixels to model input pixels with a
+ * single scale and offset, and keypoints are mapped back with its inverse.
+ */
+public class PersonRoi {
+    // region size as a factor of the aspect corrected person box
+    static final float PADDING = 1.25f;
+
+    // region center in frame pixels
+    final float centerX;
+    final float centerY;
+    // model input pixels per frame pixel
+    final float scale;
+
+    /** Region around a person box given in frame pixels. */
+    public PersonRoi(float left, float top, float right, float bottom) {
+        centerX = (left + right) / 2;
+        centerY = (top + bottom) / 2;
+        final float aspect = (float) PrePostProcessor.mInputWidth / PrePostProcessor.mInputHeight;
+        float width = Math.max(right - left, 1);
+        final float height = Math.max(bottom - top, 1);
+        if (width < height * aspect) {
+            width = height * aspect;
+        }
+        scale = PrePostProcessor.mInputWidth / (width * PADDING);
+    }
+
+    /** Frame x that lands on model input x {@code u}. */
+    float toFrameX(float u) {
+        return (u - PrePostProcessor.mInputWidth / 2f) / scale + centerX;
+    }
+
+    /** Frame y that lands on model input y {@code v}. */
+    float toFrameY(float v) {
+        return (v - PrePostProcessor.mInputHeight / 2f) / scale + centerY;
+    }
+
+    /**
+     * Maps keypoints decoded from this region's crop from model input to frame pixels, in
+     * place. Missing keypoints (score 0) stay at (0, 0).
+     */
+    public void toFrame(float[][] points) {
+        for (int k = 0; k < points[0].length; k++) {
+            if (points[2][k] > 0) {
+                points[0][k] = toFrameX(points[0][k]);
+                points[1][k] = toFrameY(points[1][k]);
+            }
+        }
+    }
+}
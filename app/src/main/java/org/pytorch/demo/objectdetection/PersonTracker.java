@@ -0,0 +1,267 @@
+package org.pytorch.demo.objectdetection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps person boxes alive between detector runs and gives every person a stable id. A
+ * detector run is matched to the existing tracks greedily by IOU against their predicted
+ * boxes; unmatched detections start new tracks and tracks missing from a few runs in a row
+ * are dropped. Between runs a track follows the keypoints estimated inside it: its box is
+ * set to their extent and its center velocity extrapolates the box to later frames.
+ *
+ * Detections and keypoint observations come from different pipeline stages, so all methods
+ * are synchronized. Coordinates are frame pixels, times are frame indices.
+ */
+public class PersonTracker {
+    // detector runs a track may miss before it is dropped
+    private static final int MAX_MISSES = 2;
+    // margin added on every side of the keypoint extent, as a factor of its size; keypoints
+    // stop short of the top of the head and the soles
+    private static final float EXTENT_MARGIN = 0.1f;
+    // keypoints needed to trust an extent
+    private static final int MIN_EXTENT_KEYPOINTS = 4;
+
+    private static class Track {
+        final int id;
+        float left, top, right, bottom;
+        // center velocity in pixels per frame
+        float vx, vy;
+        // frame the box was last updated at
+        int frame;
+        // detection score or mean keypoint score of the last update
+        float confidence;
+        // the box was last moved by keypoints rather than by the detector
+        boolean observed;
+        int misses;
+
+        Track(int id) {
+            this.id = id;
+        }
+
+        float area() {
+            return (right - left) * (bottom - top);
+        }
+
+        void moveTo(int frameIndex, float newLeft, float newTop, float newRight, float newBottom) {
+            final int frames = frameIndex - frame;
+            if (frames > 0) {
+                final float dx = ((newLeft + newRight) - (left + right)) / 2 / frames;
+                final float dy = ((newTop + newBottom) - (top + bottom)) / 2 / frames;
+                // halfway between the old velocity and the measured one, keeps a noisy box
+                // from throwing the prediction off
+                vx = (vx + dx) / 2;
+                vy = (vy + dy) / 2;
+            }
+            left = newLeft;
+            top = newTop;
+            right = newRight;
+            bottom = newBottom;
+            frame = frameIndex;
+        }
+    }
+
+    private final float mMinIou;
+    private final List<Track> mTracks = new ArrayList<>();
+    private int mNextId;
+    private int mObservations;
+
+    // scratch for matching
+    private final List<long[]> mPairs = new ArrayList<>();
+
+    /** @param minIou overlap a detection needs with a predicted box to continue its track */
+    public PersonTracker(float minIou) {
+        mMinIou = minIou;
+    }
+
+    /** Matches the person boxes of a detector run on frame {@code frameIndex} to the tracks. */
+    public synchronized void update(int frameIndex, List<Result> detections) {
+        mPairs.clear();
+        final float[] predicted = new float[4];
+        for (int t = 0; t < mTracks.size(); t++) {
+            predict(mTracks.get(t), frameIndex, predicted);
+            for (int d = 0; d < detections.size(); d++) {
+                final Box box = detections.get(d).rect;
+                final float iou = iou(predicted, box.left, box.top, box.right, box.bottom);
+                if (iou >= mMinIou) {
+                    // sortable by iou, then track, then detection
+                    mPairs.add(new long[]{Float.floatToIntBits(iou), t, d});
+                }
+            }
+        }
+        Collections.sort(mPairs, (a, b) -> Long.compare(b[0], a[0]));
+
+        final boolean[] trackMatched = new boolean[mTracks.size()];
+        final boolean[] detectionMatched = new boolean[detections.size()];
+        for (long[] pair : mPairs) {
+            final int t = (int) pair[1];
+            final int d = (int) pair[2];
+            if (trackMatched[t] || detectionMatched[d]) {
+                continue;
+            }
+            trackMatched[t] = true;
+            detectionMatched[d] = true;
+            final Track track = mTracks.get(t);
+            final Box box = detections.get(d).rect;
+            track.moveTo(frameIndex, box.left, box.top, box.right, box.bottom);
+            track.confidence = detections.get(d).score;
+            track.observed = false;
+            track.misses = 0;
+        }
+
+        for (int t = mTracks.size() - 1; t >= 0; t--) {
+            if (!trackMatched[t] && ++mTracks.get(t).misses > MAX_MISSES) {
+                mTracks.remove(t);
+            }
+        }
+        for (int d = 0; d < detections.size(); d++) {
+            if (!detectionMatched[d]) {
+                final Box box = detections.get(d).rect;
+                final Track track = new Track(mNextId++);
+                track.left = box.left;
+                track.top = box.top;
+                track.right = box.right;
+                track.bottom = box.bottom;
+                track.frame = frameIndex;
+                track.confidence = detections.get(d).score;
+                mTracks.add(track);
+            }
+        }
+    }
+
+    /**
+     * Moves track {@code id} to the extent of the keypoints estimated for it on frame
+     * {@code frameIndex}. The mean keypoint score becomes the track's confidence; with too
+     * few keypoints above {@code minScore} only the confidence is updated. Observations
+     * older than the track's last update are ignored.
+     */
+    public synchronized void observe(int id, int frameIndex, float[][] points, float minScore) {
+        final Track track = find(id);
+        if (track == null || frameIndex < track.frame) {
+            return;
+        }
+        float left = Float.MAX_VALUE;
+        float top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE;
+        float bottom = -Float.MAX_VALUE;
+        float score = 0;
+        int count = 0;
+        for (int k = 0; k < points[0].length; k++) {
+            score += points[2][k];
+            if (points[2][k] >= minScore) {
+                left = Math.min(left, points[0][k]);
+                top = Math.min(top, points[1][k]);
+                right = Math.max(right, points[0][k]);
+                bottom = Math.max(bottom, points[1][k]);
+                count++;
+            }
+        }
+        track.confidence = score / points[0].length;
+        if (count >= MIN_EXTENT_KEYPOINTS) {
+            final float marginX = (right - left) * EXTENT_MARGIN;
+            final float marginY = (bottom - top) * EXTENT_MARGIN;
+            track.moveTo(frameIndex, left - marginX, top - marginY, right + marginX, bottom + marginY);
+            track.observed = true;
+            mObservations++;
+        }
+    }
+
+    /** Keypoint observations that moved a track so far. */
+    public synchronized int getObservationCount() {
+        return mObservations;
+    }
+
+    /**
+     * Writes the box of track {@code id} extrapolated to frame {@code frameIndex} into
+     * {@code box} as left, top, right, bottom.
+     *
+     * @return false if there is no such track
+     */
+    public synchronized boolean predict(int id, int frameIndex, float[] box) {
+        final Track track = find(id);
+        if (track == null) {
+            return false;
+        }
+        predict(track, frameIndex, box);
+        return true;
+    }
+
+    /** True if the box of track {@code id} was last moved by keypoints rather than by the detector. */
+    public synchronized boolean isObserved(int id) {
+        final Track track = find(id);
+        return track != null && track.observed;
+    }
+
+    /** Confidence of the last update of track {@code id}, 0 if there is no such track. */
+    public synchronized float getConfidence(int id) {
+        final Track track = find(id);
+        return track != null ? track.confidence : 0;
+    }
+
+    /** Id of the track with the largest box, or -1 without tracks. */
+    public synchronized int getLargest() {
+        Track largest = null;
+        for (Track track : mTracks) {
+            if (largest == null || track.area() > largest.area()) {
+                largest = track;
+            }
+        }
+        return largest != null ? largest.id : -1;
+    }
+
+    /**
+     * Writes the ids of the tracks with the largest boxes into {@code ids}, largest first.
+     *
+     * @return the number of ids written, at most {@code ids.length}
+     */
+    public synchronized int getLargest(int[] ids) {
+        int count = 0;
+        for (Track track : mTracks) {
+            // insertion into the ids found so far, dropping the smallest when full
+            int i = Math.min(count, ids.length - 1);
+            if (i < 0 || (count == ids.length && find(ids[i]).area() >= track.area())) {
+                continue;
+            }
+            while (i > 0 && find(ids[i - 1]).area() < track.area()) {
+                ids[i] = ids[i - 1];
+                i--;
+            }
+            ids[i] = track.id;
+            count = Math.min(count + 1, ids.length);
+        }
+        return count;
+    }
+
+    public synchronized int size() {
+        return mTracks.size();
+    }
+
+    private Track find(int id) {
+        for (Track track : mTracks) {
+            if (track.id == id) {
+                return track;
+            }
+        }
+        return null;
+    }
+
+    private static void predict(Track track, int frameIndex, float[] box) {
+        final int frames = frameIndex - track.frame;
+        box[0] = track.left + track.vx * frames;
+        box[1] = track.top + track.vy * frames;
+        box[2] = track.right + track.vx * frames;
+        box[3] = track.bottom + track.vy * frames;
+    }
+
+    private static float iou(float[] a, float left, float top, float right, float bottom) {
+        final float areaA = (a[2] - a[0]) * (a[3] - a[1]);
+        final float areaB = (right - left) * (bottom - top);
+        if (areaA <= 0 || areaB <= 0) {
+            return 0;
+        }
+        final float intersection = Math.max(Math.min(a[2], right) - Math.max(a[0], left), 0)
+                * Math.max(Math.min(a[3], bottom) - Math.max(a[1], top), 0);
+        return intersection / (areaA + areaB - intersection);
+    }
+}
@@ -0,0 +1,14 @@
+package org.pytorch.demo.objectdetection;
+
+/**
+ * The runtime the app classes run on. The batch analysis and the classes it uses also build
+ * and run on a plain JVM, without a device or the Android SDK; they check {@link #ANDROID}
+ * and reach the few Android APIs they need by reflection.
+ */
+final class Platform {
+    /** Whether this is ART or Dalvik, both of which report themselves as Dalvik. */
+    static final boolean ANDROID = "Dalvik".equals(System.getProperty("java.vm.name"));
+
+    private Platform() {
+    }
+}
@@ -0,0 +1,61 @@
+package org.pytorch.demo.objectdetection;
+
+import java.lang.reflect.Method;
+
+/**
+ * Logging for the classes that also run on a plain JVM: goes to android.util.Log on Android
+ * and to standard error everywhere else.
+ */
+final class PlatformLog {
+    private PlatformLog() {
+    }
+
+    static void w(String tag, String msg, Throwable tr) {
+        if (!Platform.ANDROID || !AndroidLog.log(AndroidLog.WARN, tag, msg, tr)) {
+            print("W", tag, msg, tr);
+        }
+    }
+
+    static void e(String tag, String msg, Throwable tr) {
+        if (!Platform.ANDROID || !AndroidLog.log(AndroidLog.ERROR, tag, msg, tr)) {
+            print("E", tag, msg, tr);
+        }
+    }
+
+    private static void print(String level, String tag, String msg, Throwable tr) {
+        // one call per line and trace, so lines of concurrent threads do not interleave
+        synchronized (System.err) {
+            System.err.println(level + "/" + tag + ": " + msg);
+            if (tr != null) {
+                tr.printStackTrace();
+            }
+        }
+    }
+
+    // only loaded on Android
+    private static final class AndroidLog {
+        static final Method WARN = method("w");
+        static final Method ERROR = method("e");
+
+        // false if the message could not be logged
+        static boolean log(Method level, String tag, String msg, Throwable tr) {
+            if (level == null) {
+                return false;
+            }
+            try {
+                level.invoke(null, tag, msg, tr);
+                return true;
+            } catch (ReflectiveOperationException e) {
+                return false;
+            }
+        }
+
+        private static Method method(String name) {
+            try {
+                return Class.forName("android.util.Log").getMethod(name, String.class, String.class, Throwable.class);
+            } catch (ReflectiveOperationException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.pytorch.demo.objectdetection;
+
+/**
+ * Result of {@link PoseDtw#align}: the warping path that matches the frames of two pose
+ * sequences and how far each joint strayed along it.
+ */
+public class PoseAlignment {
+    /** Sum of squared frame distances along the path. */
+    public final float distance;
+    /** Matched frame pairs, from the first frames to the last ones. */
+    public final int[] queryFrames;
+    public final int[] referenceFrames;
+    /** Mean distance of every joint between matched frames, in torso lengths. */
+    public final float[] jointDeviation;
+
+    PoseAlignment(float distance, int[] queryFrames, int[] referenceFrames, float[] jointDeviation) {
+        this.distance = distance;
+        this.queryFrames = queryFrames;
+        this.referenceFrames = referenceFrames;
+        this.jointDeviation = jointDeviation;
+    }
+
+    public int getLength() {
+        return queryFrames.length;
+    }
+
+    /** Distance per matched frame pair, comparable between sequences of different lengths. */
+    public float getNormalizedDistance() {
+        return queryFrames.length > 0 ? distance / queryFrames.length : 0;
+    }
+}
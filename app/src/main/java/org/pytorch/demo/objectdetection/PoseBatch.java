@@ -0,0 +1,74 @@
+package org.pytorch.demo.objectdetection;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consecutive frames that go through the model in a single forward call. The preprocess
+ * stage writes every keyframe into its slot of {@link #input}, and every further person of
+ * a keyframe into a slot of its own; the infer stage fills {@link #heatmaps} for all slots at
+ * once, and the frames between keyframes ride along without inference so that every frame
+ * keeps its decode order.
+ */
+class PoseBatch {
+    // marks the end of the stream in the stage queues
+    static final PoseBatch END = new PoseBatch(0);
+    // frames between keyframes a batch may carry per keyframe
+    private static final int FRAMES_PER_KEYFRAME = 8;
+
+    // every frame of the batch in decode order
+    final List<PoseFrame> frames = new ArrayList<>();
+    // input slots
+    final int capacity;
+    private final int mKeyframes;
+    // slots a keyframe may take, one per person
+    private final int mSlotsPerKeyframe;
+    // position in the stream of batches, restores their order after parallel inference
+    int sequence;
+    // number of used slots, slot i starts at i*3*mInputHeight*mInputWidth of input
+    int size;
+    FloatBuffer input;
+    // size*num_of_keypoint*mHeatmapHeight*mHeatmapWidth floats
+    float[] heatmaps;
+
+    PoseBatch(int capacity) {
+        this(capacity, 1);
+    }
+
+    /** A batch of {@code keyframes} keyframes, each taking up to {@code people} slots. */
+    PoseBatch(int keyframes, int people) {
+        capacity = keyframes * people;
+        mKeyframes = keyframes;
+        mSlotsPerKeyframe = people;
+    }
+
+    boolean isFull() {
+        return capacity - size < mSlotsPerKeyframe || frames.size() >= mKeyframes * FRAMES_PER_KEYFRAME;
+    }
+
+    void add(PoseFrame frame) {
+        frames.add(frame);
+    }
+
+    void addKeyframe(PoseFrame frame) {
+        frame.slot = size++;
+        frames.add(frame);
+    }
+
+    /** A slot for another person of the keyframe added last. */
+    int addSlot() {
+        return size++;
+    }
+
+    void release() {
+        for (PoseFrame frame : frames) {
+            frame.release();
+        }
+        if (input != null) {
+            FramePool.get().release(input);
+            input = null;
+        }
+        heatmaps = null;
+    }
+}
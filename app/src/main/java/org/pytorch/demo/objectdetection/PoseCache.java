@@ -0,0 +1,146 @@
+package org.pytorch.demo.objectdetection;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistent store of pose trajectories (see {@link TrajectoryWriter}), addressed by a hash
+ * of the video content, the model file and the pipeline settings. Any change to one of them
+ * yields a different key, so entries never need to be invalidated, only evicted: once the
+ * directory grows past its size limit the least recently used entries are deleted.
+ *
+ * An entry may be partial if its analysis was interrupted; it can be reopened in append mode
+ * to process only the missing frames.
+ */
+public class PoseCache {
+    private static final String TAG = "PoseCache";
+    private static final String SUFFIX = ".kpt";
+
+    // file digests by path, length and modification time, so unchanged files are hashed once
+    private static final Map<String, String> sDigests = new HashMap<>();
+
+    private final File mDir;
+    private final long mMaxBytes;
+
+    public PoseCache(File dir, long maxBytes) {
+        mDir = dir;
+        mMaxBytes = maxBytes;
+    }
+
+    /** Cache key of the keypoints {@code signature} produces for {@code video} with {@code model}. */
+    public static String key(File video, File model, String signature) throws IOException {
+        return key(video, model, null, signature);
+    }
+
+    /**
+     * Like {@link #key(File, File, String)}, for a pipeline that crops the people found by
+     * {@code detector}, whose boxes change the keypoints as much as the pose model does.
+     * A null {@code detector} gives the same key as without one.
+     */
+    public static String key(File video, File model, File detector, String signature) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(digest(video).getBytes(Charset.forName("US-ASCII")));
+        digest.update(digest(model).getBytes(Charset.forName("US-ASCII")));
+        if (detector != null) {
+            digest.update(digest(detector).getBytes(Charset.forName("US-ASCII")));
+        }
+        digest.update(signature.getBytes(Charset.forName("UTF-8")));
+        return hex(digest.digest());
+    }
+
+    /**
+     * Returns the trajectory file of {@code key}, which may not exist yet, and marks the
+     * entry as recently used.
+     */
+    public File getEntry(String key) throws IOException {
+        if (!mDir.isDirectory() && !mDir.mkdirs()) {
+            throw new IOException("Cannot create cache directory " + mDir);
+        }
+        File entry = new File(mDir, key + SUFFIX);
+        if (entry.exists()) {
+            entry.setLastModified(System.currentTimeMillis());
+        }
+        return entry;
+    }
+
+    /** Deletes least recently used entries until the cache fits its size limit again. */
+    public void trim() {
+        File[] entries = mDir.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (entries == null) {
+            return;
+        }
+        long total = 0;
+        final long[] modified = new long[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            total += entries[i].length();
+            modified[i] = entries[i].lastModified();
+        }
+        if (total <= mMaxBytes) {
+            return;
+        }
+
+        Integer[] order = new Integer[entries.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(modified[a], modified[b]));
+        for (int i = 0; i < order.length && total > mMaxBytes; i++) {
+            File entry = entries[order[i]];
+            long length = entry.length();
+            if (entry.delete()) {
+                total -= length;
+                Log.i(TAG, "Evicted " + entry.getName());
+            }
+        }
+    }
+
+    private static String digest(File file) throws IOException {
+        final String id = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+        synchronized (sDigests) {
+            String digest = sDigests.get(id);
+            if (digest != null) {
+                return digest;
+            }
+        }
+
+        MessageDigest digest = sha256();
+        try (InputStream is = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        String hex = hex(digest.digest());
+        synchronized (sDigests) {
+            sDigests.put(id, hex);
+        }
+        return hex;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,174 @@
+package org.pytorch.demo.objectdetection;
+
+import android.util.Log;
+import android.view.TextureView;
+import android.view.ViewStub;
+import android.widget.TextView;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.camera.core.ImageProxy;
+
+import org.pytorch.IValue;
+import org.pytorch.Module;
+import org.pytorch.Tensor;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Live pose mode: runs HRNet on every camera frame and follows the user through a reference
+ * action with a {@link StreamingPoseMatcher}, showing the current phase, the similarity and
+ * the joint that is furthest off.
+ */
+public class PoseCameraActivity extends AbstractCameraXActivity<PoseCameraActivity.AnalysisResult> {
+    /** Absolute path of the reference trajectory file. */
+    static final String EXTRA_REFERENCE = "reference";
+
+    // reference frames on either side of the current phase a live frame may be matched with
+    private static final int MATCH_WINDOW = 30;
+
+    private static final String[] KEYPOINT_NAMES = {"nose", "left eye", "right eye", "left ear", "right ear",
+            "left shoulder", "right shoulder", "left elbow", "right elbow", "left wrist", "right wrist",
+            "left hip", "right hip", "left knee", "right knee", "left ankle", "right ankle"};
+
+    private Module mModule = null;
+    private YuvTensorConverter mTensorConverter;
+    private KeypointDecoder mKeypointDecoder;
+    private StreamingPoseMatcher mMatcher;
+    private int mReferenceLength;
+    private final float[][] mPoints = new float[3][PrePostProcessor.mNumKeypoint];
+    private TextView mStatus;
+    private ResultView mResultView;
+
+    static class AnalysisResult {
+        private final int mPhase;
+        private final int mLength;
+        private final float mSimilarity;
+        private final int mWorstJoint;
+        private final boolean mReused;
+
+        public AnalysisResult(int phase, int length, float similarity, int worstJoint, boolean reused) {
+            mPhase = phase;
+            mLength = length;
+            mSimilarity = similarity;
+            mWorstJoint = worstJoint;
+            mReused = reused;
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        // stops the analyzer thread, nothing uses the converter after that
+        super.onDestroy();
+        if (mTensorConverter != null) {
+            mTensorConverter.release();
+            mTensorConverter = null;
+        }
+    }
+
+    @Override
+    protected int getContentViewLayoutId() {
+        return R.layout.activity_pose_camera;
+    }
+
+    @Override
+    protected TextureView getCameraPreviewTextureView() {
+        mStatus = findViewById(R.id.poseStatus);
+        mResultView = findViewById(R.id.resultView);
+        return ((ViewStub) findViewById(R.id.pose_camera_texture_view_stub))
+                .inflate()
+                .findViewById(R.id.pose_camera_texture_view);
+    }
+
+    @Override
+    protected float getTargetAnalysisFps() {
+        // the matcher needs consecutive frames, analyze up to the camera rate
+        return 30;
+    }
+
+    @Override
+    protected float getMaxAnalysisLoad() {
+        return 1;
+    }
+
+    @Override
+    protected void applyToUiAnalyzeImageResult(AnalysisResult result) {
+        mStatus.setText(String.format("Phase %d/%d  Similarity %.2f%s\nCheck your %s\nSkipped %d/%d frames  %.1f FPS",
+                result.mPhase + 1, result.mLength, result.mSimilarity, result.mReused ? " (no motion)" : "",
+                KEYPOINT_NAMES[result.mWorstJoint], getSkippedFrameCount(), getGatedFrameCount(), getEffectiveAnalysisFps()));
+    }
+
+    @Override
+    @WorkerThread
+    @Nullable
+    protected AnalysisResult analyzeImage(ImageProxy image, int rotationDegrees) {
+        if (mModule == null) {
+            mModule = peekModel(ModelStore.POSE_MODEL);
+            if (mModule == null) {
+                return null;
+            }
+        }
+        try {
+            if (mMatcher == null) {
+                try (TrajectoryReader reader = new TrajectoryReader(new File(getIntent().getStringExtra(EXTRA_REFERENCE)))) {
+                    PoseNormalizer normalizer = new PoseNormalizer();
+                    PoseSequence reference = normalizer.normalize(reader);
+                    mReferenceLength = reference.getLength();
+                    mMatcher = new StreamingPoseMatcher(reference, normalizer, MATCH_WINDOW);
+                }
+            }
+        } catch (IOException e) {
+            Log.e("Pose Camera", "Error reading the reference trajectory", e);
+            return null;
+        }
+        if (mTensorConverter == null) {
+            mTensorConverter = new YuvTensorConverter(PrePostProcessor.mInputWidth, PrePostProcessor.mInputHeight, PrePostProcessor.NO_MEAN_RGB, PrePostProcessor.NO_STD_RGB);
+            mKeypointDecoder = new KeypointDecoder(PrePostProcessor.mNumKeypoint, PrePostProcessor.mHeatmapWidth,
+                    PrePostProcessor.mHeatmapHeight, PrePostProcessor.mInputWidth, PrePostProcessor.mInputHeight);
+            mKeypointDecoder.setRefinement(KeypointDecoder.Refinement.DARK);
+        }
+        final Tensor inputTensor = mTensorConverter.convert(image, rotationDegrees);
+        final Tensor outputTensor = mModule.forward(IValue.from(inputTensor)).toTensor();
+        mKeypointDecoder.decode(outputTensor.getDataAsFloatArray(), 0, mPoints);
+        showSkeleton();
+        return match(false);
+    }
+
+    @Override
+    @WorkerThread
+    @Nullable
+    protected AnalysisResult reusePreviousResult() {
+        // the matcher counts frames, so a still pose is fed again rather than dropped
+        return mMatcher != null ? match(true) : null;
+    }
+
+    // the converter stretches the rotated frame to the model input, as the preview fills the view
+    private void showSkeleton() {
+        final ResultView.Frame frame = mResultView.obtainFrame();
+        final float scaleX = (float) mResultView.getWidth() / PrePostProcessor.mInputWidth;
+        final float scaleY = (float) mResultView.getHeight() / PrePostProcessor.mInputHeight;
+        for (int k = 0; k < PrePostProcessor.mNumKeypoint; k++) {
+            frame.points[0][k] = mPoints[0][k] * scaleX;
+            frame.points[1][k] = mPoints[1][k] * scaleY;
+            frame.points[2][k] = mPoints[2][k];
+        }
+        frame.hasPose = true;
+        mResultView.publish(frame);
+    }
+
+    private AnalysisResult match(boolean reused) {
+        mMatcher.push(mPoints);
+
+        int worstJoint = 0;
+        float worst = -1;
+        for (int j = 0; j < PrePostProcessor.mNumKeypoint; j++) {
+            final float deviation = mMatcher.getJointDeviation(j);
+            if (deviation > worst) {
+                worst = deviation;
+                worstJoint = j;
+            }
+        }
+        return new AnalysisResult(mMatcher.getPhase(), mReferenceLength, mMatcher.getSimilarity(), worstJoint, reused);
+    }
+}
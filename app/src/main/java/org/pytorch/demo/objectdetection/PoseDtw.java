@@ -0,0 +1,310 @@
+package org.pytorch.demo.objectdetection;
+
+import java.util.Arrays;
+
+/**
+ * Dynamic time warping between two {@link PoseSequence}s, with the frame cost being the
+ * squared distance over all joint coordinates.
+ *
+ * The warping path is kept inside a Sakoe-Chiba band of {@link #setWindow} frames around the
+ * diagonal (stretched to the ratio of the two lengths), and only two rows of the cost matrix
+ * are held at a time. Before filling the matrix, {@link #distance(PoseSequence, PoseSequence, float)}
+ * computes the LB_Keogh lower bound against the reference's band envelope; if that already
+ * exceeds the cutoff the pair is rejected without any DTW work. Otherwise the per-frame
+ * bound terms are kept, and the DTW is abandoned as soon as the best partial path plus the
+ * bound for the remaining query frames passes the cutoff.
+ *
+ * An instance reuses its work arrays between calls and must not be shared between threads.
+ */
+public class PoseDtw {
+    private static final byte STEP_DIAGONAL = 0;
+    private static final byte STEP_QUERY = 1;
+    private static final byte STEP_REFERENCE = 2;
+
+    private int mWindow = -1;
+
+    // reference frames [mLo[i], mHi[i]] may be matched with query frame i
+    private int[] mLo = new int[0];
+    private int[] mHi = new int[0];
+    // two rows of the cost matrix
+    private float[] mPrev = new float[0];
+    private float[] mCurr = new float[0];
+    // LB_Keogh term of every query frame, and the sum of the terms after frame i
+    private float[] mBound = new float[0];
+    private float[] mBoundTail = new float[0];
+    private int[] mMaxDeque = new int[0];
+    private int[] mMinDeque = new int[0];
+
+    /**
+     * Limits the warping path to {@code frames} frames on either side of the diagonal. A
+     * negative value, the default, leaves the path unconstrained.
+     */
+    public void setWindow(int frames) {
+        mWindow = frames;
+    }
+
+    /** LB_Keogh lower bound of {@link #distance(PoseSequence, PoseSequence)}. */
+    public float lowerBound(PoseSequence query, PoseSequence reference) {
+        check(query, reference);
+        prepare(query.getLength(), reference.getLength());
+        return bound(query, reference);
+    }
+
+    public float distance(PoseSequence query, PoseSequence reference) {
+        return distance(query, reference, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @return the DTW distance, or {@link Float#POSITIVE_INFINITY} as soon as it is known to
+     * exceed {@code cutoff}
+     */
+    public float distance(PoseSequence query, PoseSequence reference, float cutoff) {
+        check(query, reference);
+        final int n = query.getLength();
+        final int m = reference.getLength();
+        prepare(n, m);
+        if (bound(query, reference) > cutoff) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        final int dim = query.getDimension();
+        final float[] q = query.getCoords();
+        final float[] r = reference.getCoords();
+        float[] prev = mPrev;
+        float[] curr = mCurr;
+        int prevLo = 0, prevHi = -1;
+        for (int i = 0; i < n; i++) {
+            final int lo = mLo[i];
+            final int hi = mHi[i];
+            float rowMin = Float.POSITIVE_INFINITY;
+            for (int j = lo; j <= hi; j++) {
+                float best;
+                if (i == 0 && j == 0) {
+                    best = 0;
+                } else {
+                    best = j > lo ? curr[j - 1] : Float.POSITIVE_INFINITY;
+                    if (j >= prevLo && j <= prevHi && prev[j] < best) {
+                        best = prev[j];
+                    }
+                    if (j - 1 >= prevLo && j - 1 <= prevHi && prev[j - 1] < best) {
+                        best = prev[j - 1];
+                    }
+                }
+                final float cost = best + frameDistance(q, i * dim, r, j * dim, dim);
+                curr[j] = cost;
+                if (cost < rowMin) {
+                    rowMin = cost;
+                }
+            }
+            if (rowMin + mBoundTail[i] > cutoff) {
+                return Float.POSITIVE_INFINITY;
+            }
+            float[] swap = prev;
+            prev = curr;
+            curr = swap;
+            prevLo = lo;
+            prevHi = hi;
+        }
+        return prev[m - 1] > cutoff ? Float.POSITIVE_INFINITY : prev[m - 1];
+    }
+
+    /** Full DTW that also recovers the warping path and the per-joint deviation along it. */
+    public PoseAlignment align(PoseSequence query, PoseSequence reference) {
+        check(query, reference);
+        final int n = query.getLength();
+        final int m = reference.getLength();
+        prepare(n, m);
+
+        // backpointers of the cells inside the band, row by row
+        final int[] rowStart = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            rowStart[i + 1] = rowStart[i] + mHi[i] - mLo[i] + 1;
+        }
+        final byte[] steps = new byte[rowStart[n]];
+
+        final int dim = query.getDimension();
+        final float[] q = query.getCoords();
+        final float[] r = reference.getCoords();
+        float[] prev = mPrev;
+        float[] curr = mCurr;
+        int prevLo = 0, prevHi = -1;
+        for (int i = 0; i < n; i++) {
+            final int lo = mLo[i];
+            final int hi = mHi[i];
+            for (int j = lo; j <= hi; j++) {
+                float best;
+                byte step;
+                if (i == 0 && j == 0) {
+                    best = 0;
+                    step = STEP_DIAGONAL;
+                } else {
+                    best = Float.POSITIVE_INFINITY;
+                    step = STEP_DIAGONAL;
+                    if (j - 1 >= prevLo && j - 1 <= prevHi) {
+                        best = prev[j - 1];
+                    }
+                    if (j >= prevLo && j <= prevHi && prev[j] < best) {
+                        best = prev[j];
+                        step = STEP_QUERY;
+                    }
+                    if (j > lo && curr[j - 1] < best) {
+                        best = curr[j - 1];
+                        step = STEP_REFERENCE;
+                    }
+                }
+                curr[j] = best + frameDistance(q, i * dim, r, j * dim, dim);
+                steps[rowStart[i] + j - lo] = step;
+            }
+            float[] swap = prev;
+            prev = curr;
+            curr = swap;
+            prevLo = lo;
+            prevHi = hi;
+        }
+        final float distance = prev[m - 1];
+
+        // walk back from the last cell, then reverse into frame order
+        int[] path = new int[2 * (n + m)];
+        int length = 0;
+        int i = n - 1, j = m - 1;
+        while (true) {
+            path[2 * length] = i;
+            path[2 * length + 1] = j;
+            length++;
+            if (i == 0 && j == 0) {
+                break;
+            }
+            final byte step = steps[rowStart[i] + j - mLo[i]];
+            if (step == STEP_DIAGONAL) {
+                i--;
+                j--;
+            } else if (step == STEP_QUERY) {
+                i--;
+            } else {
+                j--;
+            }
+        }
+
+        final int joints = query.getNumJoints();
+        final int[] queryFrames = new int[length];
+        final int[] referenceFrames = new int[length];
+        final float[] deviation = new float[joints];
+        for (int k = 0; k < length; k++) {
+            final int qf = path[2 * (length - 1 - k)];
+            final int rf = path[2 * (length - 1 - k) + 1];
+            queryFrames[k] = qf;
+            referenceFrames[k] = rf;
+            for (int joint = 0; joint < joints; joint++) {
+                final float dx = q[qf * dim + 2 * joint] - r[rf * dim + 2 * joint];
+                final float dy = q[qf * dim + 2 * joint + 1] - r[rf * dim + 2 * joint + 1];
+                deviation[joint] += (float) Math.sqrt(dx * dx + dy * dy);
+            }
+        }
+        for (int joint = 0; joint < joints; joint++) {
+            deviation[joint] /= length;
+        }
+        return new PoseAlignment(distance, queryFrames, referenceFrames, deviation);
+    }
+
+    private static void check(PoseSequence query, PoseSequence reference) {
+        if (query.getNumJoints() != reference.getNumJoints()) {
+            throw new IllegalArgumentException("Joint count mismatch: " + query.getNumJoints() + " vs " + reference.getNumJoints());
+        }
+        if (query.getLength() == 0 || reference.getLength() == 0) {
+            throw new IllegalArgumentException("Cannot align an empty sequence");
+        }
+    }
+
+    // sizes the work arrays and computes the band of every query frame
+    private void prepare(int n, int m) {
+        if (mLo.length < n) {
+            mLo = new int[n];
+            mHi = new int[n];
+            mBound = new float[n];
+            mBoundTail = new float[n];
+        }
+        if (mPrev.length < m) {
+            mPrev = new float[m];
+            mCurr = new float[m];
+            mMaxDeque = new int[m];
+            mMinDeque = new int[m];
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (mWindow < 0) {
+                mLo[i] = 0;
+                mHi[i] = m - 1;
+                continue;
+            }
+            final int center = n > 1 ? (int) ((long) i * (m - 1) * 2 + (n - 1)) / (2 * (n - 1)) : m - 1;
+            int lo = Math.max(0, center - mWindow);
+            final int hi = Math.min(m - 1, center + mWindow);
+            // keep consecutive rows connected when the band is narrower than the slope
+            if (i > 0 && lo > mHi[i - 1] + 1) {
+                lo = mHi[i - 1] + 1;
+            }
+            mLo[i] = i == 0 ? 0 : lo;
+            mHi[i] = hi;
+        }
+    }
+
+    // LB_Keogh against the envelope of the reference over each query frame's band, using
+    // monotonic deques for the running minimum and maximum of every coordinate
+    private float bound(PoseSequence query, PoseSequence reference) {
+        final int n = query.getLength();
+        final int dim = query.getDimension();
+        final float[] q = query.getCoords();
+        final float[] r = reference.getCoords();
+        final int[] maxDeque = mMaxDeque;
+        final int[] minDeque = mMinDeque;
+        Arrays.fill(mBound, 0, n, 0f);
+
+        for (int d = 0; d < dim; d++) {
+            int maxHead = 0, maxTail = 0, minHead = 0, minTail = 0;
+            int next = 0;
+            for (int i = 0; i < n; i++) {
+                for (; next <= mHi[i]; next++) {
+                    final float v = r[next * dim + d];
+                    while (maxTail > maxHead && r[maxDeque[maxTail - 1] * dim + d] <= v) {
+                        maxTail--;
+                    }
+                    maxDeque[maxTail++] = next;
+                    while (minTail > minHead && r[minDeque[minTail - 1] * dim + d] >= v) {
+                        minTail--;
+                    }
+                    minDeque[minTail++] = next;
+                }
+                while (maxDeque[maxHead] < mLo[i]) {
+                    maxHead++;
+                }
+                while (minDeque[minHead] < mLo[i]) {
+                    minHead++;
+                }
+                final float v = q[i * dim + d];
+                final float upper = r[maxDeque[maxHead] * dim + d];
+                final float lower = r[minDeque[minHead] * dim + d];
+                if (v > upper) {
+                    mBound[i] += (v - upper) * (v - upper);
+                } else if (v < lower) {
+                    mBound[i] += (lower - v) * (lower - v);
+                }
+            }
+        }
+
+        float tail = 0;
+        for (int i = n - 1; i >= 0; i--) {
+            mBoundTail[i] = tail;
+            tail += mBound[i];
+        }
+        return tail;
+    }
+
+    private static float frameDistance(float[] a, int aOffset, float[] b, int bOffset, int dim) {
+        float sum = 0;
+        for (int k = 0; k < dim; k++) {
+            final float diff = a[aOffset + k] - b[bOffset + k];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,86 @@
+package org.pytorch.demo.objectdetection;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One decoded video frame travelling through {@link PoseVideoPipeline}. Each stage fills in
+ * the fields it owns and hands the frame on, so a frame is only ever touched by one thread
+ * at a time.
+ */
+class PoseFrame {
+    // marks the end of the stream in the stage queues
+    static final PoseFrame END = new PoseFrame(-1, 0, null);
+
+    /** Another person cropped from a keyframe, see {@link PoseVideoPipeline#setMaxPeople}. */
+    static class Person {
+        // position in the batch's model input
+        final int slot;
+        final PersonRoi roi;
+        final int trackId;
+        int heatmapOffset;
+        // keypoints as in PoseFrame.points
+        final float[][] points = new float[3][PrePostProcessor.mNumKeypoint];
+
+        Person(int slot, PersonRoi roi, int trackId) {
+            this.slot = slot;
+            this.roi = roi;
+            this.trackId = trackId;
+        }
+    }
+
+    final int index;
+    final double timestampMs;
+    // size of the decoded frame
+    final int width;
+    final int height;
+
+    // decoded BGR frame from the FramePool, owned by the frame until preprocessing is done with it
+    Mat image;
+    // model sized frame the skeleton is drawn on, from the FramePool; a listener may keep it by
+    // setting the field to null, and hands it back to the pool when done
+    Mat resized;
+    // position in the batch's model input, or -1 for frames between keyframes that skip the
+    // model and get keypoints interpolated from the keyframes around them
+    int slot = -1;
+    // region of the person that went through the model, null if it saw the whole frame
+    PersonRoi roi;
+    // id of the tracked person the keypoints belong to, -1 without person detection
+    int trackId = -1;
+    // people of a keyframe besides the followed one, sharing its heatmaps; their keypoints are
+    // neither interpolated nor smoothed, so frames between keyframes have none
+    final List<Person> others = new ArrayList<>(0);
+    // would have been a keyframe but nothing moved since the last one, whose keypoints it keeps
+    boolean reused;
+    // batch output holding this frame's num_of_keypoint heatmaps of size mHeatmapHeight*mHeatmapWidth
+    float[] heatmaps;
+    int heatmapOffset;
+    // [0] x, [1] y and [2] score of every keypoint, in model input coordinates
+    final float[][] points = new float[3][PrePostProcessor.mNumKeypoint];
+
+    PoseFrame(int index, double timestampMs, Mat image) {
+        this.index = index;
+        this.timestampMs = timestampMs;
+        this.image = image;
+        this.width = image != null ? image.cols() : 0;
+        this.height = image != null ? image.rows() : 0;
+    }
+
+    boolean isKeyframe() {
+        return slot >= 0;
+    }
+
+    void release() {
+        if (image != null) {
+            FramePool.get().release(image);
+            image = null;
+        }
+        if (resized != null) {
+            FramePool.get().release(resized);
+            resized = null;
+        }
+        heatmaps = null;
+    }
+}
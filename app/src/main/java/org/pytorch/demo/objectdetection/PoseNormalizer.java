@@ -0,0 +1,158 @@
+package org.pytorch.demo.objectdetection;
+
+/**
+ * Turns raw keypoints into a {@link PoseSequence} that can be compared across videos: every
+ * frame is centered on the middle of the hips and the whole sequence is scaled by its mean
+ * torso length, so camera distance and position in the frame no longer matter. Joints the
+ * model is not confident about keep their last confident position, which stops a single
+ * missed detection from looking like a large motion.
+ */
+public class PoseNormalizer {
+    // COCO keypoint indices
+    static final int LEFT_SHOULDER = 5;
+    static final int RIGHT_SHOULDER = 6;
+    static final int LEFT_HIP = 11;
+    static final int RIGHT_HIP = 12;
+
+    private float mMinScore = 0.2f;
+
+    /** Keypoints scored below this count as missing. */
+    public void setMinScore(float minScore) {
+        mMinScore = minScore;
+    }
+
+    public PoseSequence normalize(TrajectoryReader reader) {
+        return normalize(reader, 0, reader.getFrameCount());
+    }
+
+    public PoseSequence normalize(TrajectoryReader reader, int start, int count) {
+        final int joints = reader.getNumKeypoints();
+        final float[][] x = new float[joints][count];
+        final float[][] y = new float[joints][count];
+        final float[][] score = new float[joints][count];
+        for (int j = 0; j < joints; j++) {
+            reader.readColumn(TrajectoryFile.X, j, start, count, x[j], 0);
+            reader.readColumn(TrajectoryFile.Y, j, start, count, y[j], 0);
+            reader.readColumn(TrajectoryFile.SCORE, j, start, count, score[j], 0);
+        }
+        return normalize(joints, count, x, y, score);
+    }
+
+    /**
+     * @param x     [joint][frame] x coordinates
+     * @param y     [joint][frame] y coordinates
+     * @param score [joint][frame] keypoint scores
+     */
+    public PoseSequence normalize(int joints, int length, float[][] x, float[][] y, float[][] score) {
+        final int dim = 2 * joints;
+        final float[] coords = new float[length * dim];
+
+        // hip centers, carried over frames where a hip is missing
+        final float[] centerX = new float[length];
+        final float[] centerY = new float[length];
+        float cx = Float.NaN, cy = Float.NaN;
+        double torso = 0;
+        int torsoFrames = 0;
+        for (int f = 0; f < length; f++) {
+            if (valid(score, LEFT_HIP, f) && valid(score, RIGHT_HIP, f)) {
+                cx = (x[LEFT_HIP][f] + x[RIGHT_HIP][f]) / 2;
+                cy = (y[LEFT_HIP][f] + y[RIGHT_HIP][f]) / 2;
+                if (valid(score, LEFT_SHOULDER, f) && valid(score, RIGHT_SHOULDER, f)) {
+                    final float sx = (x[LEFT_SHOULDER][f] + x[RIGHT_SHOULDER][f]) / 2;
+                    final float sy = (y[LEFT_SHOULDER][f] + y[RIGHT_SHOULDER][f]) / 2;
+                    torso += Math.hypot(sx - cx, sy - cy);
+                    torsoFrames++;
+                }
+            }
+            centerX[f] = cx;
+            centerY[f] = cy;
+        }
+        // frames before the first visible hips use the first known center
+        int first = 0;
+        while (first < length && Float.isNaN(centerX[first])) {
+            first++;
+        }
+        for (int f = 0; f < first; f++) {
+            centerX[f] = first < length ? centerX[first] : 0;
+            centerY[f] = first < length ? centerY[first] : 0;
+        }
+        final float scale = torsoFrames > 0 && torso > 0 ? (float) (torsoFrames / torso) : 1;
+
+        for (int j = 0; j < joints; j++) {
+            float lastX = 0, lastY = 0;
+            boolean seen = false;
+            for (int f = 0; f < length; f++) {
+                if (valid(score, j, f)) {
+                    lastX = (x[j][f] - centerX[f]) * scale;
+                    lastY = (y[j][f] - centerY[f]) * scale;
+                    if (!seen) {
+                        // backfill the frames before the joint was first seen
+                        for (int b = 0; b < f; b++) {
+                            coords[b * dim + 2 * j] = lastX;
+                            coords[b * dim + 2 * j + 1] = lastY;
+                        }
+                        seen = true;
+                    }
+                }
+                coords[f * dim + 2 * j] = lastX;
+                coords[f * dim + 2 * j + 1] = lastY;
+            }
+        }
+        return new PoseSequence(joints, length, coords);
+    }
+
+    /** A normalizer for a live stream, which only sees one frame at a time. */
+    public Stream newStream(int joints) {
+        return new Stream(joints);
+    }
+
+    /**
+     * Frame by frame variant of {@link #normalize}: the torso length is a running mean instead
+     * of the mean over the whole sequence, and missing hips or joints keep their last value.
+     */
+    public class Stream {
+        private final int mJoints;
+        private final float[] mLast;
+        private float mCenterX, mCenterY;
+        private float mTorso;
+        private int mTorsoFrames;
+
+        Stream(int joints) {
+            mJoints = joints;
+            mLast = new float[2 * joints];
+        }
+
+        /**
+         * @param points [0] x, [1] y and [2] score of every keypoint
+         * @param out    receives x and y of every joint, as in {@link PoseSequence}
+         */
+        public void normalize(float[][] points, float[] out) {
+            final float[] x = points[0];
+            final float[] y = points[1];
+            final float[] score = points[2];
+            if (score[LEFT_HIP] >= mMinScore && score[RIGHT_HIP] >= mMinScore) {
+                mCenterX = (x[LEFT_HIP] + x[RIGHT_HIP]) / 2;
+                mCenterY = (y[LEFT_HIP] + y[RIGHT_HIP]) / 2;
+                if (score[LEFT_SHOULDER] >= mMinScore && score[RIGHT_SHOULDER] >= mMinScore) {
+                    final float torso = (float) Math.hypot((x[LEFT_SHOULDER] + x[RIGHT_SHOULDER]) / 2 - mCenterX,
+                            (y[LEFT_SHOULDER] + y[RIGHT_SHOULDER]) / 2 - mCenterY);
+                    // plain mean at first, then an exponential average that follows the person
+                    mTorsoFrames++;
+                    mTorso += (torso - mTorso) * Math.max(1f / mTorsoFrames, 0.05f);
+                }
+            }
+            final float scale = mTorso > 0 ? 1 / mTorso : 1;
+            for (int j = 0; j < mJoints; j++) {
+                if (score[j] >= mMinScore) {
+                    mLast[2 * j] = (x[j] - mCenterX) * scale;
+                    mLast[2 * j + 1] = (y[j] - mCenterY) * scale;
+                }
+            }
+            System.arraycopy(mLast, 0, out, 0, 2 * mJoints);
+        }
+    }
+
+    private boolean valid(float[][] score, int joint, int frame) {
+        return score[joint][frame] >= mMinScore;
+    }
+}
@@ -0,0 +1,47 @@
+package org.pytorch.demo.objectdetection;
+
+/**
+ * A pose sequence ready for comparison: per frame the x and y of every joint, stored frame
+ * by frame in one float array so the distance between two frames is a scan over two
+ * contiguous runs. Produced by {@link PoseNormalizer}.
+ */
+public class PoseSequence {
+    private final int mNumJoints;
+    private final int mLength;
+    // [frame * 2 * numJoints + 2 * joint] x, [... + 1] y
+    private final float[] mCoords;
+
+    public PoseSequence(int numJoints, int length, float[] coords) {
+        if (coords.length < length * 2 * numJoints) {
+            throw new IllegalArgumentException("Expected " + length * 2 * numJoints + " coordinates, got " + coords.length);
+        }
+        mNumJoints = numJoints;
+        mLength = length;
+        mCoords = coords;
+    }
+
+    public int getNumJoints() {
+        return mNumJoints;
+    }
+
+    public int getLength() {
+        return mLength;
+    }
+
+    /** Floats per frame. */
+    public int getDimension() {
+        return 2 * mNumJoints;
+    }
+
+    public float getX(int frame, int joint) {
+        return mCoords[frame * 2 * mNumJoints + 2 * joint];
+    }
+
+    public float getY(int frame, int joint) {
+        return mCoords[frame * 2 * mNumJoints + 2 * joint + 1];
+    }
+
+    float[] getCoords() {
+        return mCoords;
+    }
+}
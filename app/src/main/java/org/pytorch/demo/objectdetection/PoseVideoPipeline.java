@@ -0,0 +1,774 @@
+package org.pytorch.demo.objectdetection;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs HRNet pose estimation over a video as four stages (decode, preprocess, infer,
+ * postprocess), each on its own thread and connected by bounded queues. While the model
+ * works on frame N the decoder is already reading frame N+1 and the postprocessor is
+ * finishing frame N-1. A full queue blocks the stage feeding it, so a slow model throttles
+ * decoding instead of piling up decoded frames.
+ *
+ * Frames can be batched for the model with {@link #setBatchSize}; results still reach the
+ * listener one frame at a time and in decode order.
+ *
+ * With {@link #setKeyframeInterval} only every Nth frame goes through the model and the
+ * frames in between get keypoints interpolated from the keyframes around them. Inference
+ * falls back to every frame while the last keyframe had low confidence or its keypoints
+ * moved fast; since the trigger is evaluated after inference it takes effect a few frames
+ * late. {@link #setSmoothing} runs every frame through a {@link OneEuroFilter}.
+ *
+ * With {@link #setMotionGate} every frame due to become a keyframe is first compared with
+ * the last keyframe; one without visible motion skips the model and is flagged
+ * {@code reused}. It takes the place of a keyframe in the schedule, and it and the frames
+ * before it keep the keypoints of the last keyframe.
+ *
+ * With {@link #setPersonDetector} the model sees a crop around the person in every keyframe
+ * instead of the whole frame squashed to its input size, see {@link PersonRoi}. The crops of a
+ * batch's keyframes still go through the model in one forward call, and keypoints are mapped
+ * back, so the listener gets the same coordinates either way. The detector only runs every
+ * few keyframes or when the person's keypoints lose confidence; in between a
+ * {@link PersonTracker} moves the box along with the keypoints. Those keypoints come back
+ * from postprocessing, so preprocessing then stays at most one batch of keyframes ahead of
+ * it instead of the whole queue; this costs some overlap between the stages but keeps the
+ * boxes and the confidence trigger current. The pipeline follows one
+ * track, the largest person of the first detection, and tags frames with its id. With
+ * {@link #setMaxPeople} the next largest people of every keyframe are cropped as well; their
+ * crops take slots of the same batch, so all people still go through one forward call.
+ *
+ * With several backends, such as those of a ModulePool, the infer stage runs one worker per
+ * backend, each taking the next preprocessed batch; postprocessing puts the batches back in
+ * order. The models are only called through {@link InferenceBackend}, so the pipeline also
+ * runs on {@link StubBackend}s and builds without the PyTorch runtime.
+ *
+ * A pipeline processes a single video; create a new one for every run.
+ */
+public class PoseVideoPipeline {
+    private static final String TAG = "PoseVideoPipeline";
+
+    interface Listener {
+        /** Called on the postprocess thread, in frame order. The frame is released afterwards. */
+        void onFrame(PoseFrame frame) throws IOException;
+    }
+
+    private interface StageBody {
+        void run() throws Exception;
+    }
+
+    // floats of one preprocessed frame and of one frame's heatmaps
+    private static final int INPUT_SIZE = 3 * PrePostProcessor.mInputHeight * PrePostProcessor.mInputWidth;
+    private static final int HEATMAP_SIZE = PrePostProcessor.mNumKeypoint * PrePostProcessor.mHeatmapHeight * PrePostProcessor.mHeatmapWidth;
+
+    private final InferenceBackend[] mBackends;
+    private final BlockingQueue<PoseFrame> mDecoded;
+    private final BlockingQueue<PoseBatch> mPreprocessed;
+    private final BlockingQueue<PoseBatch> mInferred;
+    private int mBatchSize = 1;
+    private final List<Thread> mStages = new CopyOnWriteArrayList<>();
+    private final AtomicReference<Throwable> mFailure = new AtomicReference<>();
+    private volatile boolean mCancelled;
+    private volatile int mFramesProcessed;
+    private final AtomicInteger mInferences = new AtomicInteger();
+    // infer workers that have not seen the end of the stream yet
+    private final AtomicInteger mInferWorkers = new AtomicInteger();
+
+    private int mKeyframeInterval = 1;
+    private float mMinKeyframeScore = 0.3f;
+    private float mMaxKeyframeMotion = 4;
+    // set by postprocessing while a trigger asks for inference on every frame
+    private volatile boolean mDense;
+    private OneEuroFilter mSmoothing;
+    // only touched by the decode thread
+    private MotionGate mMotionGate;
+    private float mMotionThreshold;
+    private String mSmoothingParams = "off";
+
+    // only touched by the preprocess thread
+    private final MatTensorConverter mConverter = new MatTensorConverter(PrePostProcessor.mInputWidth,
+            PrePostProcessor.mInputHeight, PrePostProcessor.NO_MEAN_RGB, PrePostProcessor.NO_STD_RGB);
+    private PersonDetector mPersonDetector;
+    private Mat mCrop;
+    private PerfMetrics mMetrics = new PerfMetrics();
+    private int mDetectionInterval = 8;
+    private int mKeyframesSinceDetection;
+    private int mFollowedId = -1;
+    private final float[] mTrackedBox = new float[4];
+    private int mMaxPeople = 1;
+    private volatile int mKeypointCrops;
+    private int[] mLargestIds = new int[1];
+    // fed by preprocessing with detections and by postprocessing with keypoints
+    private final PersonTracker mTracker = new PersonTracker(0.3f);
+    // keyframes postprocessing is done with, preprocessing waits on it with a person detector
+    private final Object mPostprocessedLock = new Object();
+    private int mKeyframesPostprocessed;
+    // only touched by the postprocess thread
+    private final KeypointDecoder mKeypointDecoder = new KeypointDecoder(PrePostProcessor.mNumKeypoint,
+            PrePostProcessor.mHeatmapWidth, PrePostProcessor.mHeatmapHeight,
+            PrePostProcessor.mInputWidth, PrePostProcessor.mInputHeight);
+
+    /** Runs one infer worker per backend; no backend is called from two threads. */
+    public PoseVideoPipeline(InferenceBackend[] backends, int queueCapacity) {
+        if (backends.length == 0) {
+            throw new IllegalArgumentException("No inference backend");
+        }
+        mBackends = backends.clone();
+        mDecoded = new ArrayBlockingQueue<>(queueCapacity);
+        mPreprocessed = new ArrayBlockingQueue<>(queueCapacity);
+        mInferred = new ArrayBlockingQueue<>(queueCapacity);
+        mKeypointDecoder.setRefinement(KeypointDecoder.Refinement.DARK);
+    }
+
+    /** Must be called before {@link #process}. */
+    public void setRefinement(KeypointDecoder.Refinement refinement) {
+        mKeypointDecoder.setRefinement(refinement);
+    }
+
+    /**
+     * Number of frames stacked into one [N,3,H,W] forward call. Larger batches trade
+     * latency for throughput on offline videos. Must be called before {@link #process}.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        mBatchSize = batchSize;
+    }
+
+    /**
+     * Runs the model on every {@code interval}th frame only, see the class comment. Must be
+     * called before {@link #process}.
+     */
+    public void setKeyframeInterval(int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be positive: " + interval);
+        }
+        mKeyframeInterval = interval;
+    }
+
+    /**
+     * Conditions that make every frame a keyframe: a mean keypoint score below
+     * {@code minScore}, or a keypoint moving more than {@code maxMotion} input pixels per frame
+     * between keyframes. Must be called before {@link #process}.
+     */
+    public void setKeyframeTriggers(float minScore, float maxMotion) {
+        mMinKeyframeScore = minScore;
+        mMaxKeyframeMotion = maxMotion;
+    }
+
+    /**
+     * Smooths the keypoints of every frame with a {@link OneEuroFilter}. Must be called before
+     * {@link #process}.
+     */
+    public void setSmoothing(float minCutoff, float beta) {
+        mSmoothing = new OneEuroFilter(PrePostProcessor.mNumKeypoint, minCutoff, beta);
+        mSmoothingParams = minCutoff + "," + beta;
+    }
+
+    /**
+     * Skips the model for frames due to become keyframes that differ from the last keyframe
+     * by less than {@code threshold} gray levels on average, see {@link MotionGate}. Must be
+     * called before {@link #process}.
+     */
+    public void setMotionGate(float threshold) {
+        mMotionGate = new MotionGate(threshold);
+        mMotionThreshold = threshold;
+    }
+
+    /**
+     * Runs {@code detector}, a backend running YOLOv5, on every keyframe and feeds the pose
+     * model a crop around the largest person found; frames without a person are fed whole.
+     * Must be called before {@link #process}.
+     */
+    public void setPersonDetector(InferenceBackend detector) {
+        mPersonDetector = new PersonDetector(detector);
+    }
+
+    /**
+     * People cropped from every keyframe with {@link #setPersonDetector}: the followed person,
+     * whose keypoints fill {@link PoseFrame#points}, and up to {@code people} - 1 more, largest
+     * first, in {@link PoseFrame#others}. Every crop takes a slot of the batch, so a batch
+     * holds up to {@link #setBatchSize} keyframes times {@code people} crops. Must be called
+     * before {@link #process}.
+     */
+    public void setMaxPeople(int people) {
+        if (people < 1) {
+            throw new IllegalArgumentException("People per keyframe must be positive: " + people);
+        }
+        mMaxPeople = people;
+        mLargestIds = new int[people];
+    }
+
+    /**
+     * Keyframes between detector runs with {@link #setPersonDetector}; the tracker carries the
+     * person box in between. Must be called before {@link #process}.
+     */
+    public void setDetectionInterval(int keyframes) {
+        if (keyframes < 1) {
+            throw new IllegalArgumentException("Detection interval must be positive: " + keyframes);
+        }
+        mDetectionInterval = keyframes;
+    }
+
+    /**
+     * Records stage latencies, one sample per frame or per batch for the forward call, and
+     * marks a frame whenever one reached the listener. Must be called before {@link #process}.
+     */
+    public void setMetrics(PerfMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /** Person detector runs so far. */
+    public int getDetectionCount() {
+        return mPersonDetector != null ? mPersonDetector.getDetectionCount() : 0;
+    }
+
+    /** Keyframes whose keypoints moved their person's box so far, see {@link PersonTracker#observe}. */
+    public int getTrackedKeyframeCount() {
+        return mTracker.getObservationCount();
+    }
+
+    /** Keyframes cropped around a box that the keypoints of an earlier keyframe moved last. */
+    public int getKeypointCropCount() {
+        return mKeypointCrops;
+    }
+
+    /** Keyframes the motion gate let skip the model so far. */
+    public int getReusedCount() {
+        return mMotionGate != null ? mMotionGate.getSkippedCount() : 0;
+    }
+
+    /** Frames, or person crops with {@link #setPersonDetector}, that went through the model so far. */
+    public int getInferenceCount() {
+        return mInferences.get();
+    }
+
+    /**
+     * Describes every setting that changes the keypoints produced for a given model and
+     * video, so results can be cached under it. Batch size, pool size and queue capacity are
+     * left out.
+     */
+    public String getSignature() {
+        return "input=" + PrePostProcessor.mInputWidth + "x" + PrePostProcessor.mInputHeight
+                + ";mean=" + Arrays.toString(PrePostProcessor.NO_MEAN_RGB)
+                + ";std=" + Arrays.toString(PrePostProcessor.NO_STD_RGB)
+                + ";keypoints=" + PrePostProcessor.mNumKeypoint
+                + ";heatmap=" + PrePostProcessor.mHeatmapWidth + "x" + PrePostProcessor.mHeatmapHeight
+                + ";refinement=" + mKeypointDecoder.getRefinement()
+                + ";keyframes=" + mKeyframeInterval + "," + mMinKeyframeScore + "," + mMaxKeyframeMotion
+                + ";smoothing=" + mSmoothingParams
+                + ";motion=" + (mMotionGate != null ? mMotionThreshold : "off")
+                + ";roi=" + (mPersonDetector != null ? PersonRoi.PADDING + "," + mDetectionInterval : "off");
+    }
+
+    /**
+     * Processes every frame of the video and blocks until the last one has been handed to
+     * the listener, the pipeline is cancelled or a stage fails.
+     *
+     * @return the number of frames that reached the listener
+     */
+    public int process(String videoPath, final Listener listener) throws IOException, InterruptedException {
+        return process(videoPath, 0, listener);
+    }
+
+    /**
+     * Like {@link #process(String, Listener)}, but starts at frame {@code startFrame}, e.g.
+     * to finish a video whose first frames were analyzed before.
+     */
+    public int process(String videoPath, final int startFrame, final Listener listener) throws IOException, InterruptedException {
+        final VideoCapture video = new VideoCapture(videoPath);
+        if (!video.isOpened()) {
+            throw new IOException("Cannot open video " + videoPath);
+        }
+
+        startStage("pose-decode", () -> decode(video, startFrame));
+        startStage("pose-preprocess", this::preprocessLoop);
+        mInferWorkers.set(mBackends.length);
+        for (int i = 0; i < mBackends.length; i++) {
+            final InferenceBackend backend = mBackends[i];
+            startStage("pose-infer-" + i, () -> inferLoop(backend));
+        }
+        startStage("pose-postprocess", () -> postprocessLoop(listener));
+
+        try {
+            for (Thread stage : mStages) {
+                stage.join();
+            }
+        } catch (InterruptedException e) {
+            cancel();
+            throw e;
+        } finally {
+            PoseFrame frame;
+            while ((frame = mDecoded.poll()) != null) {
+                frame.release();
+            }
+            drain(mPreprocessed);
+            drain(mInferred);
+        }
+
+        Throwable failure = mFailure.get();
+        if (failure != null) {
+            throw new IllegalStateException("Pose pipeline stage failed", failure);
+        }
+        return mFramesProcessed;
+    }
+
+    /** Stops all stages. Safe to call from any thread; {@link #process} returns shortly after. */
+    public void cancel() {
+        mCancelled = true;
+        for (Thread stage : mStages) {
+            stage.interrupt();
+        }
+    }
+
+    private void startStage(String name, final StageBody body) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (InterruptedException e) {
+                // cancelled
+            } catch (Throwable t) {
+                PlatformLog.e(TAG, "Stage " + Thread.currentThread().getName() + " failed", t);
+                if (mFailure.compareAndSet(null, t)) {
+                    cancel();
+                }
+            }
+        }, name);
+        thread.start();
+        mStages.add(thread);
+        if (mCancelled) {
+            thread.interrupt();
+        }
+    }
+
+    private void decode(VideoCapture video, int startFrame) throws InterruptedException {
+        try {
+            int index = startFrame;
+            if (startFrame > 0 && !video.set(Videoio.CAP_PROP_POS_FRAMES, startFrame)) {
+                // the backend cannot seek, skip the frames without decoding them
+                for (int i = 0; i < startFrame && !mCancelled; i++) {
+                    video.grab();
+                }
+            }
+            final FramePool pool = FramePool.get();
+            // read() reallocates a Mat of the wrong size, which the pool then keeps under the right one
+            Mat image = pool.acquireMat((int) video.get(Videoio.CAP_PROP_FRAME_HEIGHT),
+                    (int) video.get(Videoio.CAP_PROP_FRAME_WIDTH), CvType.CV_8UC3);
+            long start = PerfMetrics.now();
+            while (!mCancelled && video.read(image)) {
+                PoseFrame frame = new PoseFrame(index++, video.get(Videoio.CAP_PROP_POS_MSEC), image);
+                mMetrics.record(PerfMetrics.Stage.DECODE, start);
+                try {
+                    mDecoded.put(frame);
+                } catch (InterruptedException e) {
+                    frame.release();
+                    throw e;
+                }
+                image = pool.acquireMat(frame.height, frame.width, CvType.CV_8UC3);
+                start = PerfMetrics.now();
+            }
+            pool.release(image);
+        } finally {
+            video.release();
+        }
+        mDecoded.put(PoseFrame.END);
+    }
+
+    private void preprocessLoop() throws InterruptedException {
+        PoseBatch batch = null;
+        int sequence = 0;
+        int lastKeyframe = Integer.MIN_VALUE;
+        // keyframes so far, and those of them in batches handed to inference
+        int keyframes = 0;
+        int handedOff = 0;
+        try {
+            while (true) {
+                PoseFrame frame = mDecoded.take();
+                if (frame == PoseFrame.END) {
+                    break;
+                }
+                if (batch == null) {
+                    batch = new PoseBatch(mBatchSize, mPersonDetector != null ? mMaxPeople : 1);
+                    batch.sequence = sequence++;
+                    batch.input = FramePool.get().acquireFloatBuffer(batch.capacity * INPUT_SIZE);
+                }
+                boolean keyframe = mDense || (long) frame.index - lastKeyframe >= mKeyframeInterval;
+                if (keyframe && mMotionGate != null && mMotionGate.isStatic(frame.image)) {
+                    // nothing moved since the last keyframe, this frame keeps its keypoints
+                    // and counts as a keyframe for the schedule
+                    frame.reused = true;
+                    lastKeyframe = frame.index;
+                    keyframe = false;
+                }
+                if (keyframe) {
+                    lastKeyframe = frame.index;
+                    if (mPersonDetector != null) {
+                        // keyframes of the batch being filled only come back after it is handed off
+                        awaitPostprocessed(Math.min(keyframes - mBatchSize, handedOff));
+                    }
+                    keyframes++;
+                    batch.addKeyframe(frame);
+                    preprocess(frame, batch);
+                } else {
+                    batch.add(frame);
+                    frame.trackId = mFollowedId;
+                    final long start = PerfMetrics.now();
+                    frame.resized = acquireResized();
+                    mConverter.resize(frame.image, frame.resized);
+                    mMetrics.record(PerfMetrics.Stage.PREPROCESS, start);
+                    FramePool.get().release(frame.image);
+                    frame.image = null;
+                }
+                if (batch.isFull()) {
+                    PoseBatch full = batch;
+                    batch = null;
+                    handOff(mPreprocessed, full);
+                    handedOff = keyframes;
+                }
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            if (batch != null) {
+                batch.release();
+            }
+            throw e;
+        } finally {
+            if (mPersonDetector != null) {
+                mPersonDetector.release();
+            }
+            if (mCrop != null) {
+                mCrop.release();
+            }
+            if (mMotionGate != null) {
+                mMotionGate.release();
+            }
+        }
+        if (batch != null) {
+            handOff(mPreprocessed, batch);
+        }
+        mPreprocessed.put(PoseBatch.END);
+    }
+
+    private void inferLoop(InferenceBackend backend) throws InterruptedException {
+        while (true) {
+            PoseBatch batch = mPreprocessed.take();
+            if (batch == PoseBatch.END) {
+                // leave the end marker for the other workers, the last one passes it on
+                mPreprocessed.put(batch);
+                if (mInferWorkers.decrementAndGet() == 0) {
+                    mInferred.put(batch);
+                }
+                return;
+            }
+            try {
+                infer(batch, backend);
+            } catch (RuntimeException e) {
+                batch.release();
+                throw e;
+            }
+            handOff(mInferred, batch);
+        }
+    }
+
+    private void postprocessLoop(Listener listener) throws IOException, InterruptedException {
+        // frames after the last keyframe, waiting for the next one to be interpolated
+        final ArrayDeque<PoseFrame> pending = new ArrayDeque<>();
+        final float[][] keyPoints = new float[3][PrePostProcessor.mNumKeypoint];
+        int keyIndex = -1;
+        // batches that finished inference ahead of an earlier one
+        final Map<Integer, PoseBatch> reorder = new HashMap<>();
+        int nextSequence = 0;
+        PoseBatch batch = null;
+        try {
+            while (true) {
+                PoseBatch inferred = mInferred.take();
+                if (inferred == PoseBatch.END) {
+                    break;
+                }
+                reorder.put(inferred.sequence, inferred);
+                while ((batch = reorder.remove(nextSequence)) != null) {
+                    nextSequence++;
+                    for (PoseFrame frame : batch.frames) {
+                        if (!frame.isKeyframe()) {
+                            pending.add(frame);
+                            continue;
+                        }
+                        final long start = PerfMetrics.now();
+                        mKeypointDecoder.decode(frame.heatmaps, frame.heatmapOffset, frame.points);
+                        if (frame.roi != null) {
+                            fromRoi(frame, frame.roi, frame.trackId, frame.points);
+                        }
+                        for (PoseFrame.Person person : frame.others) {
+                            mKeypointDecoder.decode(frame.heatmaps, person.heatmapOffset, person.points);
+                            fromRoi(frame, person.roi, person.trackId, person.points);
+                        }
+                        mMetrics.record(PerfMetrics.Stage.POSTPROCESS, start);
+                        if (keyIndex >= 0) {
+                            mDense = needsDenseKeyframes(keyPoints, frame.points, frame.index - keyIndex);
+                        }
+                        // the last keyframe's keypoints hold up to the last frame the gate found
+                        // static, the frames after it are interpolated from there
+                        int heldIndex = keyIndex;
+                        for (PoseFrame between : pending) {
+                            if (between.reused) {
+                                heldIndex = between.index;
+                            }
+                        }
+                        while (!pending.isEmpty()) {
+                            PoseFrame between = pending.poll();
+                            if (between.index <= heldIndex) {
+                                copy(keyPoints, between.points);
+                            } else {
+                                interpolate(keyPoints, heldIndex, frame.points, frame.index, between);
+                            }
+                            emit(listener, between);
+                        }
+                        copy(frame.points, keyPoints);
+                        keyIndex = frame.index;
+                        synchronized (mPostprocessedLock) {
+                            mKeyframesPostprocessed++;
+                            mPostprocessedLock.notifyAll();
+                        }
+                        emit(listener, frame);
+                    }
+                    batch.input = null;
+                    batch.heatmaps = null;
+                    batch = null;
+                }
+            }
+            // nothing to interpolate towards after the last keyframe, hold its keypoints
+            while (!pending.isEmpty()) {
+                PoseFrame frame = pending.poll();
+                copy(keyPoints, frame.points);
+                emit(listener, frame);
+            }
+        } finally {
+            if (batch != null) {
+                batch.release();
+            }
+            for (PoseBatch waiting : reorder.values()) {
+                waiting.release();
+            }
+            for (PoseFrame frame : pending) {
+                frame.release();
+            }
+        }
+    }
+
+    private void awaitPostprocessed(int keyframes) throws InterruptedException {
+        synchronized (mPostprocessedLock) {
+            while (mKeyframesPostprocessed < keyframes) {
+                mPostprocessedLock.wait();
+            }
+        }
+    }
+
+    private void emit(Listener listener, PoseFrame frame) throws IOException {
+        try {
+            if (mSmoothing != null) {
+                mSmoothing.filter(frame.points, frame.timestampMs);
+            }
+            listener.onFrame(frame);
+            mFramesProcessed++;
+            mMetrics.frame();
+        } finally {
+            frame.release();
+        }
+    }
+
+    private static void copy(float[][] from, float[][] to) {
+        for (int i = 0; i < from.length; i++) {
+            System.arraycopy(from[i], 0, to[i], 0, from[i].length);
+        }
+    }
+
+    private boolean needsDenseKeyframes(float[][] previous, float[][] current, int frames) {
+        final int keypoints = current[2].length;
+        float score = 0;
+        float motion = 0;
+        for (int k = 0; k < keypoints; k++) {
+            score += current[2][k];
+            if (previous[2][k] > 0 && current[2][k] > 0) {
+                motion = Math.max(motion, (float) Math.hypot(current[0][k] - previous[0][k], current[1][k] - previous[1][k]));
+            }
+        }
+        return score / keypoints < mMinKeyframeScore || motion / frames > mMaxKeyframeMotion;
+    }
+
+    // linear interpolation between two keyframes; a keypoint missing in one of them is
+    // taken from the nearer keyframe
+    private static void interpolate(float[][] from, int fromIndex, float[][] to, int toIndex, PoseFrame frame) {
+        final float t = (float) (frame.index - fromIndex) / (toIndex - fromIndex);
+        final float[][] points = frame.points;
+        for (int k = 0; k < points[0].length; k++) {
+            if (from[2][k] > 0 && to[2][k] > 0) {
+                for (int i = 0; i < 3; i++) {
+                    points[i][k] = from[i][k] + t * (to[i][k] - from[i][k]);
+                }
+            } else {
+                final float[][] nearer = t < 0.5f ? from : to;
+                for (int i = 0; i < 3; i++) {
+                    points[i][k] = nearer[i][k];
+                }
+            }
+        }
+    }
+
+    private static void handOff(BlockingQueue<PoseBatch> queue, PoseBatch batch) throws InterruptedException {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            batch.release();
+            throw e;
+        }
+    }
+
+    private static void drain(BlockingQueue<PoseBatch> queue) {
+        PoseBatch batch;
+        while ((batch = queue.poll()) != null) {
+            batch.release();
+        }
+    }
+
+    private void preprocess(PoseFrame frame, PoseBatch batch) {
+        if (mPersonDetector != null) {
+            frame.roi = findPerson(frame);
+        }
+        final long start = PerfMetrics.now();
+        final FloatBuffer input = batch.input;
+        frame.resized = acquireResized();
+        if (frame.roi != null) {
+            if (mCrop == null) {
+                mCrop = new Mat();
+            }
+            mConverter.resize(frame.image, frame.resized);
+            mConverter.convert(frame.image, frame.roi, mCrop, input, frame.slot * INPUT_SIZE);
+            if (mMaxPeople > 1) {
+                addOthers(frame, batch);
+            }
+        } else {
+            mConverter.convert(frame.image, frame.resized, input, frame.slot * INPUT_SIZE);
+        }
+        FramePool.get().release(frame.image);
+        frame.image = null;
+        mMetrics.record(PerfMetrics.Stage.PREPROCESS, start);
+    }
+
+    private static Mat acquireResized() {
+        return FramePool.get().acquireMat(PrePostProcessor.mInputHeight, PrePostProcessor.mInputWidth, CvType.CV_8UC3);
+    }
+
+    // region around the followed person; when its track is lost the largest person is
+    // followed, usually the one closest to the camera
+    private PersonRoi findPerson(PoseFrame frame) {
+        if (mFollowedId < 0 || mKeyframesSinceDetection >= mDetectionInterval
+                || mTracker.getConfidence(mFollowedId) < mMinKeyframeScore) {
+            final long start = PerfMetrics.now();
+            mTracker.update(frame.index, mPersonDetector.detect(frame.image));
+            mMetrics.record(PerfMetrics.Stage.DETECT, start);
+            mKeyframesSinceDetection = 0;
+        }
+        mKeyframesSinceDetection++;
+        if (!mTracker.predict(mFollowedId, frame.index, mTrackedBox)) {
+            mFollowedId = mTracker.getLargest();
+            if (!mTracker.predict(mFollowedId, frame.index, mTrackedBox)) {
+                return null;
+            }
+        }
+        frame.trackId = mFollowedId;
+        if (mTracker.isObserved(mFollowedId)) {
+            mKeypointCrops++;
+        }
+        return new PersonRoi(mTrackedBox[0], mTrackedBox[1], mTrackedBox[2], mTrackedBox[3]);
+    }
+
+    // crops of the largest people besides the followed one into the next slots of the batch
+    private void addOthers(PoseFrame frame, PoseBatch batch) {
+        final int count = mTracker.getLargest(mLargestIds);
+        for (int i = 0; i < count && frame.others.size() < mMaxPeople - 1; i++) {
+            final int id = mLargestIds[i];
+            if (id == frame.trackId || !mTracker.predict(id, frame.index, mTrackedBox)) {
+                continue;
+            }
+            final PoseFrame.Person person = new PoseFrame.Person(batch.addSlot(),
+                    new PersonRoi(mTrackedBox[0], mTrackedBox[1], mTrackedBox[2], mTrackedBox[3]), id);
+            mConverter.convert(frame.image, person.roi, mCrop, batch.input, person.slot * INPUT_SIZE);
+            frame.others.add(person);
+        }
+    }
+
+    // keypoints decoded from a crop back to the coordinates of the resized whole frame; in
+    // frame pixels they also move the person's track
+    private void fromRoi(PoseFrame frame, PersonRoi roi, int trackId, float[][] points) {
+        roi.toFrame(points);
+        mTracker.observe(trackId, frame.index, points, mMinKeyframeScore);
+        final float scaleX = (float) PrePostProcessor.mInputWidth / frame.width;
+        final float scaleY = (float) PrePostProcessor.mInputHeight / frame.height;
+        for (int k = 0; k < points[0].length; k++) {
+            if (points[2][k] > 0) {
+                points[0][k] *= scaleX;
+                points[1][k] *= scaleY;
+            }
+        }
+    }
+
+    private void infer(PoseBatch batch, InferenceBackend backend) {
+        final FramePool pool = FramePool.get();
+        FloatBuffer input = batch.input;
+        if (batch.size == 0) {
+            // only frames between keyframes
+            pool.release(input);
+            batch.input = null;
+            return;
+        }
+        if (batch.size < batch.capacity) {
+            // the last batch of a video is usually short, and the tensor has to match the buffer
+            input = pool.acquireFloatBuffer(batch.size * INPUT_SIZE);
+            FloatBuffer filled = batch.input.duplicate();
+            filled.position(0);
+            filled.limit(batch.size * INPUT_SIZE);
+            input.put(filled);
+        }
+        final float[] heatmaps;
+        try {
+            final long start = PerfMetrics.now();
+            heatmaps = backend.forward(input, new long[]{batch.size, 3, PrePostProcessor.mInputHeight, PrePostProcessor.mInputWidth});
+            mMetrics.record(PerfMetrics.Stage.FORWARD, start);
+        } finally {
+            if (input != batch.input) {
+                pool.release(input);
+            }
+        }
+        pool.release(batch.input);
+        batch.input = null;
+        if (heatmaps.length != batch.size * HEATMAP_SIZE) {
+            throw new IllegalStateException("Model returned " + heatmaps.length + " values for a batch of " + batch.size);
+        }
+        mInferences.addAndGet(batch.size);
+
+        batch.heatmaps = heatmaps;
+        for (PoseFrame frame : batch.frames) {
+            if (frame.isKeyframe()) {
+                frame.heatmaps = batch.heatmaps;
+                frame.heatmapOffset = frame.slot * HEATMAP_SIZE;
+                for (PoseFrame.Person person : frame.others) {
+                    person.heatmapOffset = person.slot * HEATMAP_SIZE;
+                }
+            }
+        }
+    }
+}
@@ -6,19 +6,14 @@
 
 package org.pytorch.demo.objectdetection;
 
-import android.graphics.Rect;
-
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 
 class Result {
     int classIndex;
     Float score;
-    Rect rect;
+    Box rect;
 
-    public Result(int cls, Float output, Rect rect) {
+    public Result(int cls, Float output, Box rect) {
         this.classIndex = cls;
         this.score = output;
         this.rect = rect;
@@ -32,120 +27,60 @@ public class PrePostProcessor {
     //static float[] NO_MEAN_RGB = new float[] {0.485f, 0.456f, 0.406f};
     //static float[] NO_STD_RGB = new float[] {0.229f, 0.224f, 0.225f};
 
+    // asset names of the pose model and of YOLOv5
+    static final String POSE_MODEL = "pose_hrnet_w32_256x192.ptl";
+    static final String DETECTION_MODEL = "yolov5s.torchscript.ptl";
+
     // model input image size
     static int mInputWidth = 192;
     static int mInputHeight = 256;
 
+    // YOLOv5 input image size, the 25200 output rows below assume it
+    static int mDetectorInputWidth = 640;
+    static int mDetectorInputHeight = 640;
+
+    // HRNet output is of size num_of_keypoint*64*48, one heatmap per COCO keypoint
+    static int mNumKeypoint = 17;
+    static int mHeatmapWidth = 48;
+    static int mHeatmapHeight = 64;
+
     // model output is of size 25200*(num_of_class+5)
     private static int mOutputRow = 25200; // as decided by the YOLOv5 model for input image of size 640*640
     private static int mOutputColumn = 85; // left, top, right, bottom, score and 80 class probability
-    private static float mThreshold = 0.30f; // score above which a detection is generated
+    private static float mThreshold = 0.25f; // objectness * class score above which a detection is generated
+    private static float mNmsThreshold = 0.30f; // IOU above which the weaker of two boxes is suppressed
     private static int mNmsLimit = 15;
+    private static int mMaxCandidates = 300; // best candidates kept by the decoder for NMS
+
+    // decoders keep scratch state, so every calling thread gets its own
+    private static final ThreadLocal<YoloDecoder> sDecoder = ThreadLocal.withInitial(PrePostProcessor::newDecoder);
+    private static final ThreadLocal<NonMaxSuppression> sNms = ThreadLocal.withInitial(NonMaxSuppression::new);
 
     static String[] mClasses;
 
-    // The two methods nonMaxSuppression and IOU below are ported from https://github.com/hollance/YOLO-CoreML-MPSNNGraph/blob/master/Common/Helpers.swift
-    /**
-     Removes bounding boxes that overlap too much with other boxes that have
-     a higher score.
-     - Parameters:
-     - boxes: an array of bounding boxes and their scores
-     - limit: the maximum number of boxes that will be selected
-     - threshold: used to decide whether boxes overlap too much
-     */
-    static ArrayList<Result> nonMaxSuppression(ArrayList<Result> boxes, int limit, float threshold) {
-
-        // Do an argsort on the confidence scores, from high to low.
-        Collections.sort(boxes,
-                new Comparator<Result>() {
-                    @Override
-                    public int compare(Result o1, Result o2) {
-                        return o1.score.compareTo(o2.score);
-                    }
-                });
-
-        ArrayList<Result> selected = new ArrayList<>();
-        boolean[] active = new boolean[boxes.size()];
-        Arrays.fill(active, true);
-        int numActive = active.length;
-
-        // The algorithm is simple: Start with the box that has the highest score.
-        // Remove any remaining boxes that overlap it more than the given threshold
-        // amount. If there are any boxes left (i.e. these did not overlap with any
-        // previous boxes), then repeat this procedure, until no more boxes remain
-        // or the limit has been reached.
-        boolean done = false;
-        for (int i=0; i<boxes.size() && !done; i++) {
-            if (active[i]) {
-                Result boxA = boxes.get(i);
-                selected.add(boxA);
-                if (selected.size() >= limit) break;
-
-                for (int j=i+1; j<boxes.size(); j++) {
-                    if (active[j]) {
-                        Result boxB = boxes.get(j);
-                        if (IOU(boxA.rect, boxB.rect) > threshold) {
-                            active[j] = false;
-                            numActive -= 1;
-                            if (numActive <= 0) {
-                                done = true;
-                                break;
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        return selected;
+    static YoloDecoder newDecoder() {
+        return new YoloDecoder(mOutputRow, mOutputColumn, mMaxCandidates, mThreshold, true);
     }
 
-    /**
-     Computes intersection-over-union overlap between two bounding boxes.
-     */
-    static float IOU(Rect a, Rect b) {
-        float areaA = (a.right - a.left) * (a.bottom - a.top);
-        if (areaA <= 0.0) return 0.0f;
-
-        float areaB = (b.right - b.left) * (b.bottom - b.top);
-        if (areaB <= 0.0) return 0.0f;
-
-        float intersectionMinX = Math.max(a.left, b.left);
-        float intersectionMinY = Math.max(a.top, b.top);
-        float intersectionMaxX = Math.min(a.right, b.right);
-        float intersectionMaxY = Math.min(a.bottom, b.bottom);
-        float intersectionArea = Math.max(intersectionMaxY - intersectionMinY, 0) *
-                Math.max(intersectionMaxX - intersectionMinX, 0);
-        return intersectionArea / (areaA + areaB - intersectionArea);
+    static ArrayList<Result> outputsToNMSPredictions(float[] outputs, float imgScaleX, float imgScaleY, float ivScaleX, float ivScaleY, float startX, float startY) {
+        return outputsToNMSPredictions(sDecoder.get(), sNms.get(), outputs, imgScaleX, imgScaleY, ivScaleX, ivScaleY, startX, startY);
     }
 
-    static ArrayList<Result> outputsToNMSPredictions(float[] outputs, float imgScaleX, float imgScaleY, float ivScaleX, float ivScaleY, float startX, float startY) {
-        ArrayList<Result> results = new ArrayList<>();
-        for (int i = 0; i< mOutputRow; i++) {
-            if (outputs[i* mOutputColumn +4] > mThreshold) {
-                float x = outputs[i* mOutputColumn];
-                float y = outputs[i* mOutputColumn +1];
-                float w = outputs[i* mOutputColumn +2];
-                float h = outputs[i* mOutputColumn +3];
-
-                float left = imgScaleX * (x - w/2);
-                float top = imgScaleY * (y - h/2);
-                float right = imgScaleX * (x + w/2);
-                float bottom = imgScaleY * (y + h/2);
-
-                float max = outputs[i* mOutputColumn +5];
-                int cls = 0;
-                for (int j = 0; j < mOutputColumn -5; j++) {
-                    if (outputs[i* mOutputColumn +5+j] > max) {
-                        max = outputs[i* mOutputColumn +5+j];
-                        cls = j;
-                    }
-                }
-
-                Rect rect = new Rect((int)(startX+ivScaleX*left), (int)(startY+top*ivScaleY), (int)(startX+ivScaleX*right), (int)(startY+ivScaleY*bottom));
-                Result result = new Result(cls, outputs[i*mOutputColumn+4], rect);
-                results.add(result);
-            }
+    static ArrayList<Result> outputsToNMSPredictions(YoloDecoder decoder, NonMaxSuppression nms, float[] outputs, float imgScaleX, float imgScaleY, float ivScaleX, float ivScaleY, float startX, float startY) {
+        int count = decoder.decode(outputs);
+        int kept = nms.run(decoder.getLefts(), decoder.getTops(), decoder.getRights(), decoder.getBottoms(),
+                decoder.getScores(), decoder.getClasses(), count, mNmsLimit, mNmsThreshold);
+        ArrayList<Result> results = new ArrayList<>(kept);
+        for (int k = 0; k < kept; k++) {
+            int i = nms.getKept(k);
+            float left = imgScaleX * decoder.getLefts()[i];
+            float top = imgScaleY * decoder.getTops()[i];
+            float right = imgScaleX * decoder.getRights()[i];
+            float bottom = imgScaleY * decoder.getBottoms()[i];
+
+            Box rect = new Box((int)(startX+ivScaleX*left), (int)(startY+top*ivScaleY), (int)(startX+ivScaleX*right), (int)(startY+ivScaleY*bottom));
+            results.add(new Result(decoder.getClasses()[i], decoder.getScores()[i], rect));
         }
-        return nonMaxSuppression(results, mNmsLimit, mThreshold);
+        return results;
     }
 }
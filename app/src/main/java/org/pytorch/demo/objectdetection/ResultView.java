@@ -10,61 +10,195 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Path;
-import android.graphics.RectF;
+import android.graphics.Typeface;
 import android.util.AttributeSet;
 import android.view.View;
 
 import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
 
-
+/**
+ * Draws detection boxes, a pose skeleton and a text overlay over the camera preview without
+ * allocating: paints are set up once, label strings are cached per class and score, and
+ * results are handed over from the analyzer thread in reused {@link Frame}s.
+ *
+ * The producer fills the frame from {@link #obtainFrame} and hands it over with
+ * {@link #publish}; onDraw picks up the newest published frame. Three frames rotate through
+ * an atomic reference, so the producer never waits for a draw and a draw never sees a frame
+ * that is being filled. A frame published before the previous one was drawn replaces it.
+ */
 public class ResultView extends View {
 
     private final static int TEXT_X = 40;
     private final static int TEXT_Y = 35;
     private final static int TEXT_WIDTH = 260;
     private final static int TEXT_HEIGHT = 50;
+    private final static int OVERLAY_X = 16;
+    private final static int OVERLAY_LINE_HEIGHT = 32;
+    // score below which a keypoint and its limbs are not drawn
+    private final static float KEYPOINT_MIN_SCORE = 0.3f;
+    // label cache slots per class, one per hundredth of score
+    private final static int SCORE_STEPS = 101;
+
+    /** Results of one analyzed frame, in view coordinates. */
+    public static class Frame {
+        public final ArrayList<Result> results = new ArrayList<>();
+        /** [0] x, [1] y and [2] score of every keypoint, valid if {@link #hasPose}. */
+        public final float[][] points = new float[3][PrePostProcessor.mNumKeypoint];
+        public boolean hasPose;
+        // published and not drawn yet
+        private volatile boolean mFresh;
+    }
 
     private Paint mPaintRectangle;
+    private Paint mPaintLabel;
     private Paint mPaintText;
-    private ArrayList<Result> mResults;
+    private Paint mPaintSkeleton;
+    private Paint mPaintOverlay;
+    private volatile String[] mOverlay;
+    private String[] mLabels;
+    private final float[] mLines = new float[SkeletonRenderer.EDGES.length * 4];
+    private final float[] mJoints = new float[PrePostProcessor.mNumKeypoint * 2];
+
+    // producer side, being filled
+    private Frame mBack = new Frame();
+    // latest published frame, or a drawn one handed back to the producer
+    private final AtomicReference<Frame> mPending = new AtomicReference<>(new Frame());
+    // UI thread side, being drawn
+    private Frame mFront = new Frame();
 
     public ResultView(Context context) {
         super(context);
+        init();
     }
 
     public ResultView(Context context, AttributeSet attrs){
         super(context, attrs);
+        init();
+    }
+
+    private void init() {
         mPaintRectangle = new Paint();
         mPaintRectangle.setColor(Color.YELLOW);
+        mPaintRectangle.setStrokeWidth(5);
+        mPaintRectangle.setStyle(Paint.Style.STROKE);
+        mPaintLabel = new Paint();
+        mPaintLabel.setColor(Color.MAGENTA);
         mPaintText = new Paint();
+        mPaintText.setColor(Color.WHITE);
+        mPaintText.setStrokeWidth(0);
+        mPaintText.setStyle(Paint.Style.FILL);
+        mPaintText.setTextSize(32);
+        mPaintSkeleton = new Paint();
+        mPaintSkeleton.setColor(Color.CYAN);
+        mPaintSkeleton.setStrokeWidth(6);
+        mPaintSkeleton.setStrokeCap(Paint.Cap.ROUND);
+        mPaintSkeleton.setAntiAlias(true);
+        mPaintOverlay = new Paint();
+        mPaintOverlay.setColor(Color.WHITE);
+        mPaintOverlay.setTextSize(26);
+        mPaintOverlay.setTypeface(Typeface.MONOSPACE);
+        mPaintOverlay.setShadowLayer(3, 0, 0, Color.BLACK);
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
-        if (mResults == null) return;
-        for (Result result : mResults) {
-            mPaintRectangle.setStrokeWidth(5);
-            mPaintRectangle.setStyle(Paint.Style.STROKE);
-            canvas.drawRect(result.rect, mPaintRectangle);
-
-            Path mPath = new Path();
-            RectF mRectF = new RectF(result.rect.left, result.rect.top, result.rect.left + TEXT_WIDTH,  result.rect.top + TEXT_HEIGHT);
-            mPath.addRect(mRectF, Path.Direction.CW);
-            mPaintText.setColor(Color.MAGENTA);
-            canvas.drawPath(mPath, mPaintText);
-
-            mPaintText.setColor(Color.WHITE);
-            mPaintText.setStrokeWidth(0);
-            mPaintText.setStyle(Paint.Style.FILL);
-            mPaintText.setTextSize(32);
-            canvas.drawText(String.format("%s %.2f", PrePostProcessor.mClasses[result.classIndex], result.score), result.rect.left + TEXT_X, result.rect.top + TEXT_Y, mPaintText);
+        final String[] overlay = mOverlay;
+        if (overlay != null) {
+            for (int i = 0; i < overlay.length; i++) {
+                canvas.drawText(overlay[i], OVERLAY_X, (i + 1) * OVERLAY_LINE_HEIGHT, mPaintOverlay);
+            }
+        }
+
+        if (mPending.get().mFresh) {
+            // only the producer stores into mPending and it only stores fresh frames, so the
+            // swap gets a fresh one even if the producer published again since the check
+            mFront.mFresh = false;
+            mFront = mPending.getAndSet(mFront);
+        }
+        final Frame frame = mFront;
+        for (int i = 0; i < frame.results.size(); i++) {
+            final Result result = frame.results.get(i);
+            canvas.drawRect(result.rect.left, result.rect.top, result.rect.right, result.rect.bottom, mPaintRectangle);
+            canvas.drawRect(result.rect.left, result.rect.top, result.rect.left + TEXT_WIDTH, result.rect.top + TEXT_HEIGHT, mPaintLabel);
+            canvas.drawText(label(result), result.rect.left + TEXT_X, result.rect.top + TEXT_Y, mPaintText);
+        }
+        if (frame.hasPose) {
+            drawSkeleton(canvas, frame.points);
+        }
+    }
+
+    private void drawSkeleton(Canvas canvas, float[][] points) {
+        final float[] x = points[0];
+        final float[] y = points[1];
+        final float[] score = points[2];
+        int lines = 0;
+        for (int[] edge : SkeletonRenderer.EDGES) {
+            final int a = edge[0];
+            final int b = edge[1];
+            if (score[a] >= KEYPOINT_MIN_SCORE && score[b] >= KEYPOINT_MIN_SCORE) {
+                mLines[lines++] = x[a];
+                mLines[lines++] = y[a];
+                mLines[lines++] = x[b];
+                mLines[lines++] = y[b];
+            }
+        }
+        int joints = 0;
+        for (int k = 0; k < score.length; k++) {
+            if (score[k] >= KEYPOINT_MIN_SCORE) {
+                mJoints[joints++] = x[k];
+                mJoints[joints++] = y[k];
+            }
+        }
+        canvas.drawLines(mLines, 0, lines, mPaintSkeleton);
+        canvas.drawPoints(mJoints, 0, joints, mPaintRectangle);
+    }
+
+    // "class score" text, formatted once per class and hundredth of score
+    private String label(Result result) {
+        if (mLabels == null) {
+            mLabels = new String[PrePostProcessor.mClasses.length * SCORE_STEPS];
+        }
+        final int step = Math.max(0, Math.min(SCORE_STEPS - 1, Math.round(result.score * 100)));
+        final int index = result.classIndex * SCORE_STEPS + step;
+        String label = mLabels[index];
+        if (label == null) {
+            label = String.format(Locale.US, "%s %.2f", PrePostProcessor.mClasses[result.classIndex], step / 100f);
+            mLabels[index] = label;
         }
+        return label;
     }
 
+    /**
+     * The frame to fill for the next {@link #publish}, cleared. Only one thread may produce
+     * frames, and it must not touch the frame after publishing it.
+     */
+    public Frame obtainFrame() {
+        final Frame frame = mBack;
+        frame.results.clear();
+        frame.hasPose = false;
+        return frame;
+    }
+
+    /** Hands the frame from {@link #obtainFrame} to the UI thread and schedules a redraw. */
+    public void publish(Frame frame) {
+        frame.mFresh = true;
+        mBack = mPending.getAndSet(frame);
+        postInvalidate();
+    }
+
+    /** Shows {@code results}; a shortcut for a producer that only has boxes. */
     public void setResults(ArrayList<Result> results) {
-        mResults = results;
+        final Frame frame = obtainFrame();
+        frame.results.addAll(results);
+        publish(frame);
+    }
+
+    /** Lines of text drawn in the top left corner, e.g. {@link PerfMetrics#summary}; null for none. */
+    public void setOverlay(String[] lines) {
+        mOverlay = lines;
     }
 }
@@ -0,0 +1,56 @@
+package org.pytorch.demo.objectdetection;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Draws a COCO skeleton onto a frame from an edge table, reusing the same OpenCV objects for
+ * every line. Not thread-safe.
+ */
+public class SkeletonRenderer {
+    // pairs of COCO keypoint indices connected by a limb
+    static final int[][] EDGES = {
+            {0, 1}, {0, 2},
+            {5, 6}, {5, 7}, {7, 9}, {6, 8}, {8, 10},
+            {5, 11}, {6, 12},
+            {11, 13}, {13, 15}, {12, 14}, {14, 16},
+    };
+
+    private final Point mFrom = new Point();
+    private final Point mTo = new Point();
+    private final Scalar mColor;
+    private final int mThickness;
+
+    public SkeletonRenderer() {
+        this(new Scalar(0, 0, 255), 2);
+    }
+
+    /** @param color BGR line color */
+    public SkeletonRenderer(Scalar color, int thickness) {
+        mColor = color;
+        mThickness = thickness;
+    }
+
+    /**
+     * Draws every limb whose two keypoints were found, i.e. have positive coordinates.
+     *
+     * @param points [0] x and [1] y of every keypoint, in {@code image} pixels
+     */
+    public void draw(Mat image, float[][] points) {
+        final float[] x = points[0];
+        final float[] y = points[1];
+        for (int[] edge : EDGES) {
+            final int a = edge[0];
+            final int b = edge[1];
+            if (x[a] > 0 && y[a] > 0 && x[b] > 0 && y[b] > 0) {
+                mFrom.x = x[a];
+                mFrom.y = y[a];
+                mTo.x = x[b];
+                mTo.y = y[b];
+                Imgproc.line(image, mFrom, mTo, mColor, mThickness);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.pytorch.demo.objectdetection;
+
+/**
+ * Follows a live pose stream through a reference action with open-begin, open-end DTW.
+ *
+ * Only one column of the cost matrix is kept: for every reference frame the cheapest warping
+ * path that ends with the latest live frame, and how many steps that path took. A push only
+ * updates the reference frames within {@link #setWindow} frames of the current phase, plus
+ * the first reference frame so the user can start over at any time. The work per live frame
+ * is O(window) regardless of how long the stream has been running.
+ *
+ * The phase is the reference frame whose path has the lowest cost per step; that cost is the
+ * current distance to the reference.
+ *
+ * Not thread-safe; feed it from the analysis thread only.
+ */
+public class StreamingPoseMatcher {
+    private final PoseSequence mReference;
+    private final PoseNormalizer.Stream mNormalizer;
+    private final int mLength;
+    private final int mDim;
+    private int mWindow;
+
+    // cost and step count of the best path ending at each reference frame, for the previous
+    // and the current live frame; only valid inside [lo, hi] and at frame 0
+    private float[] mPrevCost;
+    private float[] mCost;
+    private int[] mPrevSteps;
+    private int[] mSteps;
+    private int mPrevLo, mPrevHi;
+    private boolean mStarted;
+
+    private final float[] mFrame;
+    private int mPhase;
+    private float mDistance = Float.POSITIVE_INFINITY;
+    private long mFrames;
+
+    public StreamingPoseMatcher(PoseSequence reference, PoseNormalizer normalizer, int window) {
+        mReference = reference;
+        mNormalizer = normalizer.newStream(reference.getNumJoints());
+        mLength = reference.getLength();
+        mDim = reference.getDimension();
+        mWindow = Math.max(1, window);
+        mPrevCost = new float[mLength];
+        mCost = new float[mLength];
+        mPrevSteps = new int[mLength];
+        mSteps = new int[mLength];
+        mFrame = new float[mDim];
+    }
+
+    /** Reference frames on either side of the current phase that a new frame may match. */
+    public void setWindow(int window) {
+        mWindow = Math.max(1, window);
+    }
+
+    /**
+     * Adds the keypoints of the next live frame.
+     *
+     * @param points [0] x, [1] y and [2] score of every keypoint
+     */
+    public void push(float[][] points) {
+        mNormalizer.normalize(points, mFrame);
+        update(mFrame);
+    }
+
+    /** Adds an already normalized frame, laid out like a {@link PoseSequence} frame. */
+    public void update(float[] frame) {
+        final float[] r = mReference.getCoords();
+        final int lo = Math.max(0, mPhase - mWindow);
+        final int hi = Math.min(mLength - 1, mPhase + mWindow);
+
+        float best = Float.POSITIVE_INFINITY;
+        int phase = 0;
+        // a path may start at the first reference frame with any live frame
+        mCost[0] = frameDistance(frame, r, 0);
+        mSteps[0] = 1;
+        if (mCost[0] < best) {
+            best = mCost[0];
+        }
+        for (int j = Math.max(1, lo); j <= hi; j++) {
+            float cost = Float.POSITIVE_INFINITY;
+            int steps = 0;
+            if (j - 1 >= lo || j - 1 == 0) {
+                cost = mCost[j - 1];
+                steps = mSteps[j - 1];
+            }
+            if (isValid(j - 1) && mPrevCost[j - 1] < cost) {
+                cost = mPrevCost[j - 1];
+                steps = mPrevSteps[j - 1];
+            }
+            if (isValid(j) && mPrevCost[j] < cost) {
+                cost = mPrevCost[j];
+                steps = mPrevSteps[j];
+            }
+            if (cost == Float.POSITIVE_INFINITY) {
+                mCost[j] = cost;
+                mSteps[j] = 1;
+                continue;
+            }
+            mCost[j] = cost + frameDistance(frame, r, j * mDim);
+            mSteps[j] = steps + 1;
+            final float normalized = mCost[j] / mSteps[j];
+            if (normalized < best) {
+                best = normalized;
+                phase = j;
+            }
+        }
+
+        float[] swapCost = mPrevCost;
+        mPrevCost = mCost;
+        mCost = swapCost;
+        int[] swapSteps = mPrevSteps;
+        mPrevSteps = mSteps;
+        mSteps = swapSteps;
+        mPrevLo = lo;
+        mPrevHi = hi;
+        mStarted = true;
+        mPhase = phase;
+        mDistance = best;
+        mFrames++;
+    }
+
+    /** Reference frame the latest live frame is matched with. */
+    public int getPhase() {
+        return mPhase;
+    }
+
+    /** Position in the reference action, from 0 at its start to 1 at its end. */
+    public float getProgress() {
+        return mLength > 1 ? (float) mPhase / (mLength - 1) : 1;
+    }
+
+    /** Mean squared frame distance along the matched path; lower is more similar. */
+    public float getDistance() {
+        return mDistance;
+    }
+
+    /** {@link #getDistance()} mapped to (0, 1], 1 being identical. */
+    public float getSimilarity() {
+        return 1 / (1 + mDistance);
+    }
+
+    /** Distance of one joint between the latest live frame and the matched reference frame. */
+    public float getJointDeviation(int joint) {
+        final float dx = mFrame[2 * joint] - mReference.getX(mPhase, joint);
+        final float dy = mFrame[2 * joint + 1] - mReference.getY(mPhase, joint);
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    public long getFrameCount() {
+        return mFrames;
+    }
+
+    // whether a previous column cell was computed
+    private boolean isValid(int j) {
+        return mStarted && ((j >= mPrevLo && j <= mPrevHi) || j == 0);
+    }
+
+    private float frameDistance(float[] frame, float[] r, int offset) {
+        float sum = 0;
+        for (int k = 0; k < mDim; k++) {
+            final float diff = frame[k] - r[offset + k];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,125 @@
+package org.pytorch.demo.objectdetection;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Deterministic stand-in for the models, to exercise and profile the pipelines without a
+ * model file or the PyTorch native library. Outputs have the real shapes and decode to
+ * plausible results: the pose model reports a standing person whose horizontal position
+ * follows the mean brightness of the input, the detector one person in the middle of the
+ * frame and a smaller one to its left. The same input always gives the same output.
+ */
+public class StubBackend implements InferenceBackend {
+    public enum Model {
+        POSE, DETECTOR
+    }
+
+    // x, y of every COCO keypoint of a standing person, as fractions of the heatmap
+    private static final float[][] STANDING = {
+            {0.50f, 0.47f, 0.53f, 0.44f, 0.56f, 0.40f, 0.60f, 0.36f, 0.64f, 0.34f, 0.66f, 0.44f, 0.56f, 0.44f, 0.56f, 0.44f, 0.56f},
+            {0.12f, 0.10f, 0.10f, 0.12f, 0.12f, 0.25f, 0.25f, 0.40f, 0.40f, 0.53f, 0.53f, 0.55f, 0.55f, 0.72f, 0.72f, 0.90f, 0.90f},
+    };
+    private static final float PEAK = 0.9f;
+    private static final float SHOULDER = 0.6f;
+    // input floats sampled for the brightness, a prime so the samples spread over the channels
+    private static final int SAMPLE_STRIDE = 97;
+    private static final float DETECTION_SCORE = 0.9f;
+    private static final int DETECTION_COLUMNS = 85;
+
+    private final Model mModel;
+    private long mLatencyMs;
+
+    public StubBackend(Model model) {
+        mModel = model;
+    }
+
+    /** Makes every forward call take at least {@code latencyMs} per item, to mimic a real model. */
+    public void setLatencyMs(long latencyMs) {
+        mLatencyMs = latencyMs;
+    }
+
+    @Override
+    public float[] forward(FloatBuffer input, long[] shape) {
+        final long start = System.nanoTime();
+        final int items = (int) shape[0];
+        final int itemSize = (int) (shape[1] * shape[2] * shape[3]);
+        final float[] output;
+        if (mModel == Model.POSE) {
+            final int heatmapSize = PrePostProcessor.mHeatmapWidth * PrePostProcessor.mHeatmapHeight;
+            output = new float[items * PrePostProcessor.mNumKeypoint * heatmapSize];
+            for (int i = 0; i < items; i++) {
+                final float shift = (brightness(input, i * itemSize, itemSize) - 0.5f) / 2;
+                for (int k = 0; k < PrePostProcessor.mNumKeypoint; k++) {
+                    blob(output, (i * PrePostProcessor.mNumKeypoint + k) * heatmapSize,
+                            Math.round((STANDING[0][k] + shift) * (PrePostProcessor.mHeatmapWidth - 1)),
+                            Math.round(STANDING[1][k] * (PrePostProcessor.mHeatmapHeight - 1)));
+                }
+            }
+        } else {
+            final int rows = detectionRows((int) shape[3], (int) shape[2]);
+            output = new float[items * rows * DETECTION_COLUMNS];
+            for (int i = 0; i < items; i++) {
+                // only the first two anchors see something, everything else is background
+                final int base = i * rows * DETECTION_COLUMNS;
+                person(output, base, shape[3] / 2f, shape[2] / 2f, shape[3] / 3f, shape[2] * 0.8f);
+                person(output, base + DETECTION_COLUMNS, shape[3] / 6f, shape[2] * 0.6f, shape[3] / 6f, shape[2] * 0.5f);
+            }
+        }
+        sleepUntil(start + items * mLatencyMs * 1000000);
+        return output;
+    }
+
+    private static void person(float[] output, int base, float x, float y, float width, float height) {
+        output[base] = x;
+        output[base + 1] = y;
+        output[base + 2] = width;
+        output[base + 3] = height;
+        output[base + 4] = DETECTION_SCORE;
+        output[base + 5 + PersonDetector.PERSON_CLASS] = DETECTION_SCORE;
+    }
+
+    // rows of YOLOv5 output: 3 anchors per cell of the stride 8, 16 and 32 grids
+    private static int detectionRows(int width, int height) {
+        int rows = 0;
+        for (int stride = 8; stride <= 32; stride *= 2) {
+            rows += 3 * (width / stride) * (height / stride);
+        }
+        return rows;
+    }
+
+    private static float brightness(FloatBuffer input, int offset, int size) {
+        float sum = 0;
+        int count = 0;
+        for (int i = 0; i < size; i += SAMPLE_STRIDE, count++) {
+            sum += input.get(offset + i);
+        }
+        return Math.max(0, Math.min(1, sum / count));
+    }
+
+    // a peak with its 4 neighbours, so refinement and blur have something to work with
+    private static void blob(float[] heatmaps, int offset, int x, int y) {
+        final int width = PrePostProcessor.mHeatmapWidth;
+        final int height = PrePostProcessor.mHeatmapHeight;
+        x = Math.max(1, Math.min(width - 2, x));
+        y = Math.max(1, Math.min(height - 2, y));
+        final int center = offset + y * width + x;
+        heatmaps[center] = PEAK;
+        heatmaps[center - 1] = SHOULDER;
+        heatmaps[center + 1] = SHOULDER;
+        heatmaps[center - width] = SHOULDER;
+        heatmaps[center + width] = SHOULDER;
+    }
+
+    private static void sleepUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+            } catch (InterruptedException e) {
+                // keep the interrupt for the caller, a cancelled pipeline checks it next
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.pytorch.demo.objectdetection;
+
+import java.nio.ByteOrder;
+
+/**
+ * Layout of a pose trajectory file, shared by {@link TrajectoryWriter} and
+ * {@link TrajectoryReader}.
+ *
+ * The file is a fixed header followed by blocks of {@link #BLOCK_FRAMES} frames. Inside a
+ * block the data is stored column by column: the frame timestamps, then for every keypoint
+ * its x values, then all y values, then all scores. A scan over one joint therefore reads
+ * contiguous floats, and the position of any value follows from its frame and joint index.
+ * The last block is padded to full size. All values are little endian.
+ *
+ * <pre>
+ * header:  int magic, int version, int numKeypoints, int blockFrames,
+ *          long frameCount, int flags, padding up to HEADER_SIZE
+ * block:   double timestampMs[B]
+ *          float x[K][B], float y[K][B], float score[K][B]
+ * </pre>
+ */
+final class TrajectoryFile {
+    static final int MAGIC = 0x5354504B; // "KPTS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int BLOCK_FRAMES = 256;
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final int OFFSET_MAGIC = 0;
+    static final int OFFSET_VERSION = 4;
+    static final int OFFSET_NUM_KEYPOINTS = 8;
+    static final int OFFSET_BLOCK_FRAMES = 12;
+    static final int OFFSET_FRAME_COUNT = 16;
+    static final int OFFSET_FLAGS = 24;
+
+    /** Set once the whole source video has been written. */
+    static final int FLAG_COMPLETE = 1;
+
+    // value planes inside a block, after the timestamps
+    static final int X = 0;
+    static final int Y = 1;
+    static final int SCORE = 2;
+
+    private TrajectoryFile() {
+    }
+
+    static int blockSize(int numKeypoints) {
+        return BLOCK_FRAMES * 8 + 3 * numKeypoints * BLOCK_FRAMES * 4;
+    }
+
+    static long blockOffset(int numKeypoints, int block) {
+        return HEADER_SIZE + (long) block * blockSize(numKeypoints);
+    }
+
+    /** Offset of a value column (plane, joint) inside a block. */
+    static int columnOffset(int numKeypoints, int plane, int joint) {
+        return BLOCK_FRAMES * 8 + (plane * numKeypoints + joint) * BLOCK_FRAMES * 4;
+    }
+}
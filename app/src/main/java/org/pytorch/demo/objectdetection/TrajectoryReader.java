@@ -0,0 +1,132 @@
+package org.pytorch.demo.objectdetection;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view of a trajectory file (see {@link TrajectoryFile}) through a memory map.
+ * Nothing is copied onto the heap up front; the OS pages in the blocks that are actually
+ * touched, so long sequences can be scanned and compared repeatedly at little cost.
+ *
+ * A reader may be used from several threads as long as none of them closes it.
+ */
+public class TrajectoryReader implements Closeable {
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mMap;
+    private final int mNumKeypoints;
+    private final int mFrameCount;
+    private final int mFlags;
+
+    public TrajectoryReader(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = mFile.getChannel();
+            if (channel.size() < TrajectoryFile.HEADER_SIZE) {
+                throw new IOException("Not a trajectory file: " + file);
+            }
+            mMap = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mMap.order(TrajectoryFile.ORDER);
+            if (mMap.getInt(TrajectoryFile.OFFSET_MAGIC) != TrajectoryFile.MAGIC) {
+                throw new IOException("Not a trajectory file: " + file);
+            }
+            if (mMap.getInt(TrajectoryFile.OFFSET_VERSION) != TrajectoryFile.VERSION
+                    || mMap.getInt(TrajectoryFile.OFFSET_BLOCK_FRAMES) != TrajectoryFile.BLOCK_FRAMES) {
+                throw new IOException("Unsupported trajectory file version: " + file);
+            }
+            mNumKeypoints = mMap.getInt(TrajectoryFile.OFFSET_NUM_KEYPOINTS);
+            mFrameCount = (int) mMap.getLong(TrajectoryFile.OFFSET_FRAME_COUNT);
+            mFlags = mMap.getInt(TrajectoryFile.OFFSET_FLAGS);
+
+            final int blocks = (mFrameCount + TrajectoryFile.BLOCK_FRAMES - 1) / TrajectoryFile.BLOCK_FRAMES;
+            if (channel.size() < TrajectoryFile.blockOffset(mNumKeypoints, blocks)) {
+                throw new IOException("Truncated trajectory file: " + file);
+            }
+        } catch (IOException | RuntimeException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public int getNumKeypoints() {
+        return mNumKeypoints;
+    }
+
+    /** Whether the writer saw the whole source video. */
+    public boolean isComplete() {
+        return (mFlags & TrajectoryFile.FLAG_COMPLETE) != 0;
+    }
+
+    public double getTimestampMs(int frame) {
+        return mMap.getDouble(blockBase(frame) + (frame % TrajectoryFile.BLOCK_FRAMES) * 8);
+    }
+
+    public float getX(int frame, int joint) {
+        return get(TrajectoryFile.X, frame, joint);
+    }
+
+    public float getY(int frame, int joint) {
+        return get(TrajectoryFile.Y, frame, joint);
+    }
+
+    public float getScore(int frame, int joint) {
+        return get(TrajectoryFile.SCORE, frame, joint);
+    }
+
+    /** Fills [0] x, [1] y and [2] score of every keypoint of one frame. */
+    public void readFrame(int frame, float[][] points) {
+        for (int plane = TrajectoryFile.X; plane <= TrajectoryFile.SCORE; plane++) {
+            for (int joint = 0; joint < mNumKeypoints; joint++) {
+                points[plane][joint] = get(plane, frame, joint);
+            }
+        }
+    }
+
+    /**
+     * Copies {@code count} consecutive values of one joint, starting at frame {@code start},
+     * with one bulk read per block.
+     *
+     * @param plane {@link TrajectoryFile#X}, {@link TrajectoryFile#Y} or {@link TrajectoryFile#SCORE}
+     */
+    public void readColumn(int plane, int joint, int start, int count, float[] dst, int dstOffset) {
+        if (start < 0 || count < 0 || start + count > mFrameCount) {
+            throw new IndexOutOfBoundsException("Frames " + start + "+" + count + " of " + mFrameCount);
+        }
+        final ByteBuffer view = mMap.duplicate().order(TrajectoryFile.ORDER);
+        final int column = TrajectoryFile.columnOffset(mNumKeypoints, plane, joint);
+        while (count > 0) {
+            final int row = start % TrajectoryFile.BLOCK_FRAMES;
+            final int run = Math.min(count, TrajectoryFile.BLOCK_FRAMES - row);
+            view.position(blockBase(start) + column + row * 4);
+            view.asFloatBuffer().get(dst, dstOffset, run);
+            start += run;
+            dstOffset += run;
+            count -= run;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    private float get(int plane, int frame, int joint) {
+        if (frame < 0 || frame >= mFrameCount) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + mFrameCount);
+        }
+        return mMap.getFloat(blockBase(frame) + TrajectoryFile.columnOffset(mNumKeypoints, plane, joint)
+                + (frame % TrajectoryFile.BLOCK_FRAMES) * 4);
+    }
+
+    private int blockBase(int frame) {
+        return (int) TrajectoryFile.blockOffset(mNumKeypoints, frame / TrajectoryFile.BLOCK_FRAMES);
+    }
+}
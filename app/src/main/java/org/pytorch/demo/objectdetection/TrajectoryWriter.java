@@ -0,0 +1,175 @@
+package org.pytorch.demo.objectdetection;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends per-frame keypoints to a trajectory file (see {@link TrajectoryFile}) while a
+ * video is analyzed. Frames are collected into an in-memory block and written with one
+ * positional write when the block is full, so appending costs a few stores per value.
+ *
+ * Call {@link #markComplete()} once every frame of the source has been appended; a file
+ * closed without it is still readable but flagged as partial, and can be reopened in append
+ * mode to continue where it stopped. The header is rewritten after every full block, so
+ * even a process that dies mid-run leaves a readable prefix behind.
+ */
+public class TrajectoryWriter implements Closeable {
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final int mNumKeypoints;
+    private final ByteBuffer mHeader;
+    private final ByteBuffer mBlock;
+    private int mFrameCount;
+    private int mBlockFrames;
+    private int mFlags;
+
+    public TrajectoryWriter(File file, int numKeypoints) throws IOException {
+        this(file, numKeypoints, false);
+    }
+
+    /**
+     * @param append keep the frames of an existing partial trajectory and continue after
+     *               them; a missing, complete or incompatible file is started over
+     */
+    public TrajectoryWriter(File file, int numKeypoints, boolean append) throws IOException {
+        mFile = new RandomAccessFile(file, "rw");
+        mChannel = mFile.getChannel();
+        mNumKeypoints = numKeypoints;
+        mHeader = ByteBuffer.allocateDirect(TrajectoryFile.HEADER_SIZE).order(TrajectoryFile.ORDER);
+        mBlock = ByteBuffer.allocateDirect(TrajectoryFile.blockSize(numKeypoints)).order(TrajectoryFile.ORDER);
+        try {
+            if (!append || !resume()) {
+                mChannel.truncate(0);
+                writeHeader();
+            }
+        } catch (IOException | RuntimeException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @param points [0] x, [1] y and [2] score of every keypoint
+     */
+    public void append(double timestampMs, float[][] points) throws IOException {
+        final int row = mBlockFrames;
+        mBlock.putDouble(row * 8, timestampMs);
+        for (int plane = TrajectoryFile.X; plane <= TrajectoryFile.SCORE; plane++) {
+            final float[] values = points[plane];
+            for (int joint = 0; joint < mNumKeypoints; joint++) {
+                mBlock.putFloat(TrajectoryFile.columnOffset(mNumKeypoints, plane, joint) + row * 4, values[joint]);
+            }
+        }
+        mBlockFrames++;
+        mFrameCount++;
+
+        if (mBlockFrames == TrajectoryFile.BLOCK_FRAMES) {
+            writeBlock();
+            clearBlock();
+            mBlockFrames = 0;
+            writeHeader();
+        }
+    }
+
+    /** Flags the trajectory as covering the whole source. */
+    public void markComplete() {
+        mFlags |= TrajectoryFile.FLAG_COMPLETE;
+    }
+
+    /** Writes the pending partial block and the header so readers see every appended frame. */
+    public void flush() throws IOException {
+        if (mBlockFrames > 0) {
+            writeBlock();
+        }
+        writeHeader();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            mFile.close();
+        }
+    }
+
+    // loads the header and the last partial block of an existing partial trajectory
+    private boolean resume() throws IOException {
+        if (mChannel.size() < TrajectoryFile.HEADER_SIZE) {
+            return false;
+        }
+        read(mHeader, 0);
+        if (mHeader.getInt(TrajectoryFile.OFFSET_MAGIC) != TrajectoryFile.MAGIC
+                || mHeader.getInt(TrajectoryFile.OFFSET_VERSION) != TrajectoryFile.VERSION
+                || mHeader.getInt(TrajectoryFile.OFFSET_BLOCK_FRAMES) != TrajectoryFile.BLOCK_FRAMES
+                || mHeader.getInt(TrajectoryFile.OFFSET_NUM_KEYPOINTS) != mNumKeypoints
+                || (mHeader.getInt(TrajectoryFile.OFFSET_FLAGS) & TrajectoryFile.FLAG_COMPLETE) != 0) {
+            return false;
+        }
+        final long frameCount = mHeader.getLong(TrajectoryFile.OFFSET_FRAME_COUNT);
+        final int blocks = (int) (frameCount / TrajectoryFile.BLOCK_FRAMES);
+        final int rows = (int) (frameCount % TrajectoryFile.BLOCK_FRAMES);
+        final long end = TrajectoryFile.blockOffset(mNumKeypoints, blocks);
+        if (frameCount < 0 || mChannel.size() < (rows > 0 ? end + mBlock.capacity() : end)) {
+            return false;
+        }
+        if (rows > 0) {
+            read(mBlock, end);
+        }
+        mFrameCount = (int) frameCount;
+        mBlockFrames = rows;
+        mFlags = mHeader.getInt(TrajectoryFile.OFFSET_FLAGS);
+        return true;
+    }
+
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            final int read = mChannel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of trajectory file");
+            }
+            position += read;
+        }
+        buffer.clear();
+    }
+
+    private void writeBlock() throws IOException {
+        final int block = (mFrameCount - mBlockFrames) / TrajectoryFile.BLOCK_FRAMES;
+        mBlock.clear();
+        long position = TrajectoryFile.blockOffset(mNumKeypoints, block);
+        while (mBlock.hasRemaining()) {
+            position += mChannel.write(mBlock, position);
+        }
+    }
+
+    private void clearBlock() {
+        mBlock.clear();
+        while (mBlock.remaining() >= 8) {
+            mBlock.putLong(0);
+        }
+        mBlock.clear();
+    }
+
+    private void writeHeader() throws IOException {
+        mHeader.clear();
+        mHeader.putInt(TrajectoryFile.OFFSET_MAGIC, TrajectoryFile.MAGIC);
+        mHeader.putInt(TrajectoryFile.OFFSET_VERSION, TrajectoryFile.VERSION);
+        mHeader.putInt(TrajectoryFile.OFFSET_NUM_KEYPOINTS, mNumKeypoints);
+        mHeader.putInt(TrajectoryFile.OFFSET_BLOCK_FRAMES, TrajectoryFile.BLOCK_FRAMES);
+        mHeader.putLong(TrajectoryFile.OFFSET_FRAME_COUNT, mFrameCount);
+        mHeader.putInt(TrajectoryFile.OFFSET_FLAGS, mFlags);
+        long position = 0;
+        while (mHeader.hasRemaining()) {
+            position += mChannel.write(mHeader, position);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.pytorch.demo.objectdetection;
+
+import java.util.Random;
+
+/**
+ * Vantage-point tree over fixed-length float vectors under Euclidean distance. Each node
+ * splits its points at the median distance to a vantage point, so a nearest neighbour
+ * search can skip every subtree the triangle inequality rules out and typically visits a
+ * logarithmic share of the points.
+ *
+ * The tree is built once over a snapshot of the points and is immutable afterwards.
+ */
+class VpTree {
+    private final float[][] mPoints;
+    // node i holds point mItem[i]; children are -1 when absent
+    private final int[] mItem;
+    private final float[] mRadius;
+    private final int[] mInside;
+    private final int[] mOutside;
+    private int mNodes;
+    private final int mRoot;
+
+    // search state, only valid during search()
+    private int[] mResult;
+    private float[] mResultDistance;
+    private int mResultCount;
+
+    VpTree(float[][] points) {
+        mPoints = points;
+        final int n = points.length;
+        mItem = new int[n];
+        mRadius = new float[n];
+        mInside = new int[n];
+        mOutside = new int[n];
+        final int[] items = new int[n];
+        for (int i = 0; i < n; i++) {
+            items[i] = i;
+        }
+        mRoot = build(items, 0, n, new float[n], new Random(0));
+    }
+
+    /**
+     * Finds the {@code k} points closest to {@code query}.
+     *
+     * @param result receives the point indices, nearest first
+     * @return the number of indices written, at most k
+     */
+    synchronized int search(float[] query, int k, int[] result) {
+        mResult = result;
+        mResultDistance = new float[k];
+        mResultCount = 0;
+        search(mRoot, query, k);
+        final int count = mResultCount;
+        mResult = null;
+        mResultDistance = null;
+        return count;
+    }
+
+    static float distance(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            final float diff = a[i] - b[i];
+            sum += diff * diff;
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    private int build(int[] items, int from, int to, float[] distances, Random random) {
+        if (from >= to) {
+            return -1;
+        }
+        final int node = mNodes++;
+        // a random vantage point keeps the tree balanced on sorted input
+        swap(items, from, from + random.nextInt(to - from));
+        final int vantage = items[from];
+        mItem[node] = vantage;
+        mInside[node] = -1;
+        mOutside[node] = -1;
+        if (to - from == 1) {
+            return node;
+        }
+
+        for (int i = from + 1; i < to; i++) {
+            distances[items[i]] = distance(mPoints[vantage], mPoints[items[i]]);
+        }
+        final int median = (from + 1 + to) / 2;
+        select(items, from + 1, to - 1, median, distances);
+        mRadius[node] = distances[items[median]];
+        mInside[node] = build(items, from + 1, median, distances, random);
+        mOutside[node] = build(items, median, to, distances, random);
+        return node;
+    }
+
+    // quickselect on items[lo..hi] by distance so that items[k] is in its sorted position
+    private static void select(int[] items, int lo, int hi, int k, float[] distances) {
+        while (lo < hi) {
+            final float pivot = distances[items[(lo + hi) >>> 1]];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (distances[items[i]] < pivot) {
+                    i++;
+                }
+                while (distances[items[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(items, i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void search(int node, float[] query, int k) {
+        if (node < 0) {
+            return;
+        }
+        final int item = mItem[node];
+        final float d = distance(query, mPoints[item]);
+        offer(item, d, k);
+
+        final float radius = mRadius[node];
+        if (d < radius) {
+            search(mInside[node], query, k);
+            if (d + tau(k) >= radius) {
+                search(mOutside[node], query, k);
+            }
+        } else {
+            search(mOutside[node], query, k);
+            if (d - tau(k) <= radius) {
+                search(mInside[node], query, k);
+            }
+        }
+    }
+
+    // distance of the current k-th neighbour, the search radius
+    private float tau(int k) {
+        return mResultCount < k ? Float.POSITIVE_INFINITY : mResultDistance[k - 1];
+    }
+
+    // insertion into the sorted result list, k is small
+    private void offer(int item, float d, int k) {
+        if (mResultCount == k && d >= mResultDistance[k - 1]) {
+            return;
+        }
+        int i = mResultCount < k ? mResultCount++ : k - 1;
+        while (i > 0 && mResultDistance[i - 1] > d) {
+            mResult[i] = mResult[i - 1];
+            mResultDistance[i] = mResultDistance[i - 1];
+            i--;
+        }
+        mResult[i] = item;
+        mResultDistance[i] = d;
+    }
+
+    private static void swap(int[] items, int i, int j) {
+        final int tmp = items[i];
+        items[i] = items[j];
+        items[j] = tmp;
+    }
+}
@@ -0,0 +1,176 @@
+package org.pytorch.demo.objectdetection;
+
+import androidx.camera.core.ImageProxy;
+
+import org.pytorch.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Converts YUV_420_888 camera frames straight into the model's float input tensor. Rotation,
+ * resizing (nearest neighbour), YUV to RGB conversion and normalization all happen in one
+ * pass over the output pixels, honouring the row and pixel strides of every plane, so there
+ * is no NV21 copy, JPEG round trip or intermediate Bitmap.
+ *
+ * For every output pixel the offsets of its Y and chroma samples are precomputed and only
+ * rebuilt when the frame geometry or rotation changes. The returned tensor wraps a buffer
+ * from the {@link FramePool} that is overwritten by the next call and handed back by
+ * {@link #release}; the converter must stay on one thread.
+ */
+public class YuvTensorConverter {
+    private final int mWidth;
+    private final int mHeight;
+    private final FloatBuffer mBuffer;
+    private final Tensor mTensor;
+    private final float[] mChw;
+    // [channel][clamped 8 bit value], channels in RGB order
+    private final float[][] mLut = new float[3][256];
+
+    private byte[] mY = new byte[0];
+    private byte[] mU = new byte[0];
+    private byte[] mV = new byte[0];
+    private final int[] mYIndex;
+    private final int[] mUvIndex;
+
+    // geometry the index tables were built for
+    private int mSourceWidth = -1;
+    private int mSourceHeight = -1;
+    private int mRotation = -1;
+    private int mYRowStride = -1;
+    private int mYPixelStride = -1;
+    private int mUvRowStride = -1;
+    private int mUvPixelStride = -1;
+
+    public YuvTensorConverter(int width, int height, float[] normMeanRGB, float[] normStdRGB) {
+        mWidth = width;
+        mHeight = height;
+        mBuffer = FramePool.get().acquireFloatBuffer(3 * width * height);
+        mTensor = Tensor.fromBlob(mBuffer, new long[]{1, 3, height, width});
+        mChw = new float[3 * width * height];
+        mYIndex = new int[width * height];
+        mUvIndex = new int[width * height];
+        for (int c = 0; c < 3; c++) {
+            for (int v = 0; v < 256; v++) {
+                mLut[c][v] = (v / 255.0f - normMeanRGB[c]) / normStdRGB[c];
+            }
+        }
+    }
+
+    /** Width of the frame after rotation, in camera pixels. */
+    public int getRotatedWidth() {
+        return mRotation % 180 == 0 ? mSourceWidth : mSourceHeight;
+    }
+
+    /** Height of the frame after rotation, in camera pixels. */
+    public int getRotatedHeight() {
+        return mRotation % 180 == 0 ? mSourceHeight : mSourceWidth;
+    }
+
+    public Tensor convert(ImageProxy image, int rotationDegrees) {
+        final ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        final ImageProxy.PlaneProxy yPlane = planes[0];
+        final ImageProxy.PlaneProxy uPlane = planes[1];
+        final ImageProxy.PlaneProxy vPlane = planes[2];
+        final int rotation = ((rotationDegrees % 360) + 360) % 360;
+
+        if (image.getWidth() != mSourceWidth || image.getHeight() != mSourceHeight || rotation != mRotation
+                || yPlane.getRowStride() != mYRowStride || yPlane.getPixelStride() != mYPixelStride
+                || uPlane.getRowStride() != mUvRowStride || uPlane.getPixelStride() != mUvPixelStride) {
+            buildIndex(image.getWidth(), image.getHeight(), rotation, yPlane.getRowStride(), yPlane.getPixelStride(),
+                    uPlane.getRowStride(), uPlane.getPixelStride());
+        }
+
+        mY = copy(yPlane.getBuffer(), mY);
+        mU = copy(uPlane.getBuffer(), mU);
+        mV = copy(vPlane.getBuffer(), mV);
+
+        final byte[] ys = mY;
+        final byte[] us = mU;
+        final byte[] vs = mV;
+        final int[] yIndex = mYIndex;
+        final int[] uvIndex = mUvIndex;
+        final float[] chw = mChw;
+        final float[] lutR = mLut[0];
+        final float[] lutG = mLut[1];
+        final float[] lutB = mLut[2];
+        final int planeSize = mWidth * mHeight;
+        for (int i = 0; i < planeSize; i++) {
+            final int y = ys[yIndex[i]] & 0xFF;
+            final int u = (us[uvIndex[i]] & 0xFF) - 128;
+            final int v = (vs[uvIndex[i]] & 0xFF) - 128;
+            // BT.601 full range in 10 bit fixed point
+            chw[i] = lutR[clamp(y + ((1436 * v) >> 10))];
+            chw[planeSize + i] = lutG[clamp(y - ((352 * u + 731 * v) >> 10))];
+            chw[2 * planeSize + i] = lutB[clamp(y + ((1815 * u) >> 10))];
+        }
+
+        mBuffer.rewind();
+        mBuffer.put(chw);
+        mBuffer.rewind();
+        return mTensor;
+    }
+
+    /** Hands the tensor buffer back to the pool; the converter and its tensors are unusable afterwards. */
+    public void release() {
+        FramePool.get().release(mBuffer);
+    }
+
+    private void buildIndex(int sourceWidth, int sourceHeight, int rotation, int yRowStride, int yPixelStride,
+                            int uvRowStride, int uvPixelStride) {
+        mSourceWidth = sourceWidth;
+        mSourceHeight = sourceHeight;
+        mRotation = rotation;
+        mYRowStride = yRowStride;
+        mYPixelStride = yPixelStride;
+        mUvRowStride = uvRowStride;
+        mUvPixelStride = uvPixelStride;
+
+        final int rotatedWidth = getRotatedWidth();
+        final int rotatedHeight = getRotatedHeight();
+        for (int oy = 0; oy < mHeight; oy++) {
+            final int ry = Math.min(rotatedHeight - 1, (int) ((oy + 0.5f) * rotatedHeight / mHeight));
+            for (int ox = 0; ox < mWidth; ox++) {
+                final int rx = Math.min(rotatedWidth - 1, (int) ((ox + 0.5f) * rotatedWidth / mWidth));
+                // map the pixel of the rotated frame back to the sensor frame
+                final int sx;
+                final int sy;
+                switch (rotation) {
+                    case 90:
+                        sx = ry;
+                        sy = sourceHeight - 1 - rx;
+                        break;
+                    case 180:
+                        sx = sourceWidth - 1 - rx;
+                        sy = sourceHeight - 1 - ry;
+                        break;
+                    case 270:
+                        sx = sourceWidth - 1 - ry;
+                        sy = rx;
+                        break;
+                    default:
+                        sx = rx;
+                        sy = ry;
+                        break;
+                }
+                final int i = oy * mWidth + ox;
+                mYIndex[i] = sy * yRowStride + sx * yPixelStride;
+                mUvIndex[i] = (sy >> 1) * uvRowStride + (sx >> 1) * uvPixelStride;
+            }
+        }
+    }
+
+    private static byte[] copy(ByteBuffer buffer, byte[] dst) {
+        buffer.rewind();
+        final int size = buffer.remaining();
+        if (dst.length < size) {
+            dst = new byte[size];
+        }
+        buffer.get(dst, 0, size);
+        return dst;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
@@ -0,0 +1,95 @@
+package org.pytorch.demo.objectdetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Command line entry point of {@link BatchAnalysisRunner} on a plain JVM:
+ *
+ * <pre>
+ * BatchAnalysis --stub [--parallelism N] [--workers N] [--latency MS] VIDEO_DIR OUTPUT_DIR
+ * </pre>
+ *
+ * Analyzes every video of {@code VIDEO_DIR} into {@code OUTPUT_DIR} and prints a line per
+ * video. The models need the PyTorch Android runtime, so inference runs on
+ * {@link StubBackend}s, which take {@code --latency} ms per item to mimic a model; decoding,
+ * preprocessing, postprocessing and writing are the app's. The exit status is 1 if a video
+ * failed and 2 for bad arguments.
+ */
+public class BatchAnalysis {
+    private static final String USAGE =
+            "usage: BatchAnalysis --stub [--parallelism N] [--workers N] [--latency MS] VIDEO_DIR OUTPUT_DIR";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean stub = false;
+        int parallelism = 1;
+        int workers = 1;
+        long latencyMs = 0;
+        File videoDir = null;
+        File outputDir = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--stub":
+                        stub = true;
+                        break;
+                    case "--parallelism":
+                        parallelism = Integer.parseInt(args[++i]);
+                        break;
+                    case "--workers":
+                        workers = Integer.parseInt(args[++i]);
+                        break;
+                    case "--latency":
+                        latencyMs = Long.parseLong(args[++i]);
+                        break;
+                    default:
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option " + args[i]);
+                        } else if (videoDir == null) {
+                            videoDir = new File(args[i]);
+                        } else if (outputDir == null) {
+                            outputDir = new File(args[i]);
+                        } else {
+                            throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                        }
+                }
+            }
+            if (videoDir == null || outputDir == null) {
+                throw new IllegalArgumentException("Missing VIDEO_DIR or OUTPUT_DIR");
+            }
+            if (!stub) {
+                throw new IllegalArgumentException("The models only run on the device, pass --stub");
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing option value" : e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        nu.pattern.OpenCV.loadLocally();
+        final long stubLatencyMs = latencyMs;
+        final BatchAnalysisRunner runner = new BatchAnalysisRunner(model -> {
+            final StubBackend backend = new StubBackend(PrePostProcessor.POSE_MODEL.equals(model)
+                    ? StubBackend.Model.POSE : StubBackend.Model.DETECTOR);
+            backend.setLatencyMs(stubLatencyMs);
+            return backend;
+        }, outputDir);
+        runner.setParallelism(parallelism);
+        runner.setWorkers(workers);
+
+        final long start = System.nanoTime();
+        final List<BatchAnalysisRunner.Report> reports = runner.run(videoDir);
+        boolean failed = false;
+        for (BatchAnalysisRunner.Report report : reports) {
+            System.out.println(report.video + ": " + report.frames + " frames in " + report.elapsedMs + " ms, "
+                    + report.getFps() + " fps, " + report.inferences + " inferences"
+                    + (report.error != null ? ", " + report.error : ""));
+            failed |= report.error != null;
+        }
+        System.out.println(reports.size() + " videos in " + (System.nanoTime() - start) / 1000000
+                + " ms, report in " + new File(outputDir, BatchAnalysisRunner.REPORT));
+        System.exit(failed ? 1 : 0);
+    }
+}
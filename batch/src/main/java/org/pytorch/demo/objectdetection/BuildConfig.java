@@ -0,0 +1,10 @@
+package org.pytorch.demo.objectdetection;
+
+/** Stands in for the BuildConfig that the Android build generates for the app. */
+public final class BuildConfig {
+    // a release build, FramePool's leak tracking would take a stack trace per buffer
+    public static final boolean DEBUG = false;
+
+    private BuildConfig() {
+    }
+}
@@ -0,0 +1,122 @@
+package org.pytorch.demo.objectdetection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * YOLOv5 post-processing on a synthetic 640x640 output: 25200 rows of 85 values, mostly
+ * background with objectness near 0, plus a few objects that each light up a cluster of
+ * neighbouring anchors with jittered boxes, as the real model does. The same work done the
+ * way PrePostProcessor did it before is measured by {@link LegacyDetectionBenchmark}.
+ */
+@State(Scope.Thread)
+public class DetectionBenchmark {
+    // same as PrePostProcessor
+    static final int ROWS = 25200;
+    static final int COLUMNS = 85;
+    private static final int INPUT_SIZE = 640;
+    static final float THRESHOLD = 0.25f;
+    static final float NMS_THRESHOLD = 0.30f;
+    static final int NMS_LIMIT = 15;
+    private static final int MAX_CANDIDATES = 300;
+
+    private static final int OBJECTS = 12;
+    private static final int ANCHORS_PER_OBJECT = 40;
+
+    @Param({"EXHAUSTIVE", "GRID"})
+    public NonMaxSuppression.Mode mode;
+
+    private float[] mOutputs;
+    private YoloDecoder mDecoder;
+    private NonMaxSuppression mNms;
+    // candidates decoded once, for the suppression and IOU benchmarks
+    private float[] mLeft, mTop, mRight, mBottom, mScores;
+    private int[] mClasses;
+    private int mCount;
+
+    @Setup
+    public void setUp() {
+        mOutputs = syntheticOutputs();
+        mDecoder = new YoloDecoder(ROWS, COLUMNS, MAX_CANDIDATES, THRESHOLD, true);
+        mNms = new NonMaxSuppression();
+        mNms.setMode(mode);
+
+        mCount = mDecoder.decode(mOutputs);
+        mLeft = mDecoder.getLefts().clone();
+        mTop = mDecoder.getTops().clone();
+        mRight = mDecoder.getRights().clone();
+        mBottom = mDecoder.getBottoms().clone();
+        mScores = mDecoder.getScores().clone();
+        mClasses = mDecoder.getClasses().clone();
+    }
+
+    @Benchmark
+    public int decode() {
+        return mDecoder.decode(mOutputs);
+    }
+
+    @Benchmark
+    public int suppress() {
+        return mNms.run(mLeft, mTop, mRight, mBottom, mScores, mClasses, mCount, NMS_LIMIT, NMS_THRESHOLD);
+    }
+
+    /** What PrePostProcessor.outputsToNMSPredictions does before building the Results. */
+    @Benchmark
+    public int decodeAndSuppress() {
+        final int count = mDecoder.decode(mOutputs);
+        return mNms.run(mDecoder.getLefts(), mDecoder.getTops(), mDecoder.getRights(), mDecoder.getBottoms(),
+                mDecoder.getScores(), mDecoder.getClasses(), count, NMS_LIMIT, NMS_THRESHOLD);
+    }
+
+    /** IOU of every pair of decoded candidates, the worst case of exhaustive suppression. */
+    @Benchmark
+    public float iouAllPairs() {
+        float sum = 0;
+        for (int a = 0; a < mCount; a++) {
+            for (int b = a + 1; b < mCount; b++) {
+                sum += NonMaxSuppression.iou(mLeft[a], mTop[a], mRight[a], mBottom[a],
+                        mLeft[b], mTop[b], mRight[b], mBottom[b]);
+            }
+        }
+        return sum;
+    }
+
+    static float[] syntheticOutputs() {
+        final Random random = new Random(42);
+        final float[] outputs = new float[ROWS * COLUMNS];
+        for (int i = 0; i < ROWS; i++) {
+            final int base = i * COLUMNS;
+            outputs[base] = random.nextFloat() * INPUT_SIZE;
+            outputs[base + 1] = random.nextFloat() * INPUT_SIZE;
+            outputs[base + 2] = 10 + random.nextFloat() * 100;
+            outputs[base + 3] = 10 + random.nextFloat() * 100;
+            outputs[base + 4] = random.nextFloat() * 0.02f;
+            for (int j = 5; j < COLUMNS; j++) {
+                outputs[base + j] = random.nextFloat() * 0.05f;
+            }
+        }
+        for (int o = 0; o < OBJECTS; o++) {
+            final float x = 80 + random.nextFloat() * (INPUT_SIZE - 160);
+            final float y = 80 + random.nextFloat() * (INPUT_SIZE - 160);
+            final float w = 40 + random.nextFloat() * 120;
+            final float h = 40 + random.nextFloat() * 200;
+            final int cls = random.nextInt(COLUMNS - 5);
+            final int first = random.nextInt(ROWS - ANCHORS_PER_OBJECT);
+            for (int a = 0; a < ANCHORS_PER_OBJECT; a++) {
+                final int base = (first + a) * COLUMNS;
+                outputs[base] = x + (random.nextFloat() - 0.5f) * w * 0.2f;
+                outputs[base + 1] = y + (random.nextFloat() - 0.5f) * h * 0.2f;
+                outputs[base + 2] = w * (0.9f + random.nextFloat() * 0.2f);
+                outputs[base + 3] = h * (0.9f + random.nextFloat() * 0.2f);
+                outputs[base + 4] = 0.3f + random.nextFloat() * 0.65f;
+                outputs[base + 5 + cls] = 0.6f + random.nextFloat() * 0.4f;
+            }
+        }
+        return outputs;
+    }
+}
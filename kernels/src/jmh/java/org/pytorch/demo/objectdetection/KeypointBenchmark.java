@@ -0,0 +1,59 @@
+package org.pytorch.demo.objectdetection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * HRNet keypoint decoding on a synthetic 17x64x48 output: one Gaussian peak per heatmap at
+ * a random cell, sigma 2 as in training, over low noise.
+ */
+@State(Scope.Thread)
+public class KeypointBenchmark {
+    // same as PrePostProcessor
+    private static final int KEYPOINTS = 17;
+    private static final int HEATMAP_WIDTH = 48;
+    private static final int HEATMAP_HEIGHT = 64;
+    private static final int INPUT_WIDTH = 192;
+    private static final int INPUT_HEIGHT = 256;
+    private static final float SIGMA = 2;
+
+    @Param({"NONE", "QUADRATIC", "DARK"})
+    public KeypointDecoder.Refinement refinement;
+
+    private float[] mHeatmaps;
+    private KeypointDecoder mDecoder;
+    private final float[][] mPoints = new float[3][KEYPOINTS];
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        final int size = HEATMAP_WIDTH * HEATMAP_HEIGHT;
+        mHeatmaps = new float[KEYPOINTS * size];
+        for (int k = 0; k < KEYPOINTS; k++) {
+            final float peakX = 2 + random.nextFloat() * (HEATMAP_WIDTH - 4);
+            final float peakY = 2 + random.nextFloat() * (HEATMAP_HEIGHT - 4);
+            final float peak = 0.4f + random.nextFloat() * 0.5f;
+            for (int y = 0; y < HEATMAP_HEIGHT; y++) {
+                for (int x = 0; x < HEATMAP_WIDTH; x++) {
+                    final float dx = x - peakX;
+                    final float dy = y - peakY;
+                    mHeatmaps[k * size + y * HEATMAP_WIDTH + x] = peak * (float) Math.exp(-(dx * dx + dy * dy) / (2 * SIGMA * SIGMA))
+                            + random.nextFloat() * 0.01f;
+                }
+            }
+        }
+        mDecoder = new KeypointDecoder(KEYPOINTS, HEATMAP_WIDTH, HEATMAP_HEIGHT, INPUT_WIDTH, INPUT_HEIGHT);
+        mDecoder.setRefinement(refinement);
+    }
+
+    @Benchmark
+    public float[][] decode() {
+        mDecoder.decode(mHeatmaps, 0, mPoints);
+        return mPoints;
+    }
+}
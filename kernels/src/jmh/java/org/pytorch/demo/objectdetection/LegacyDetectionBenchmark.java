@@ -0,0 +1,57 @@
+package org.pytorch.demo.objectdetection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+
+/**
+ * The benchmarks of {@link DetectionBenchmark} on the same synthetic output, run through
+ * {@link LegacyPostProcessor}: the speed-up of the primitive decoder and NMS is the ratio of
+ * the scores of equally named benchmarks.
+ */
+@State(Scope.Thread)
+public class LegacyDetectionBenchmark {
+    private float[] mOutputs;
+    // candidates decoded once, for the suppression and IOU benchmarks
+    private ArrayList<LegacyPostProcessor.Result> mCandidates;
+
+    @Setup
+    public void setUp() {
+        mOutputs = DetectionBenchmark.syntheticOutputs();
+        mCandidates = LegacyPostProcessor.decode(mOutputs, DetectionBenchmark.ROWS, DetectionBenchmark.COLUMNS,
+                DetectionBenchmark.THRESHOLD, 1, 1, 1, 1, 0, 0);
+    }
+
+    @Benchmark
+    public int decode() {
+        return LegacyPostProcessor.decode(mOutputs, DetectionBenchmark.ROWS, DetectionBenchmark.COLUMNS,
+                DetectionBenchmark.THRESHOLD, 1, 1, 1, 1, 0, 0).size();
+    }
+
+    /** Sorts a copy, the old code sorted the list it was handed. */
+    @Benchmark
+    public int suppress() {
+        return LegacyPostProcessor.nonMaxSuppression(new ArrayList<>(mCandidates),
+                DetectionBenchmark.NMS_LIMIT, DetectionBenchmark.NMS_THRESHOLD).size();
+    }
+
+    @Benchmark
+    public int decodeAndSuppress() {
+        return LegacyPostProcessor.outputsToNMSPredictions(mOutputs, DetectionBenchmark.ROWS, DetectionBenchmark.COLUMNS,
+                DetectionBenchmark.THRESHOLD, DetectionBenchmark.NMS_LIMIT, DetectionBenchmark.NMS_THRESHOLD).size();
+    }
+
+    @Benchmark
+    public float iouAllPairs() {
+        float sum = 0;
+        for (int a = 0; a < mCandidates.size(); a++) {
+            for (int b = a + 1; b < mCandidates.size(); b++) {
+                sum += LegacyPostProcessor.IOU(mCandidates.get(a).rect, mCandidates.get(b).rect);
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,132 @@
+package org.pytorch.demo.objectdetection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * PrePostProcessor's YOLOv5 post-processing from before {@link YoloDecoder} and
+ * {@link NonMaxSuppression}, kept as the baseline of {@link LegacyDetectionBenchmark}. It is
+ * ported as it was, including the ascending sort of nonMaxSuppression, with
+ * android.graphics.Rect replaced by a plain box of int coordinates.
+ */
+class LegacyPostProcessor {
+    static class Box {
+        final int left, top, right, bottom;
+
+        Box(int left, int top, int right, int bottom) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+    }
+
+    static class Result {
+        int classIndex;
+        Float score;
+        Box rect;
+
+        Result(int cls, Float output, Box rect) {
+            this.classIndex = cls;
+            this.score = output;
+            this.rect = rect;
+        }
+    }
+
+    static ArrayList<Result> nonMaxSuppression(ArrayList<Result> boxes, int limit, float threshold) {
+
+        // Do an argsort on the confidence scores, from high to low.
+        Collections.sort(boxes,
+                new Comparator<Result>() {
+                    @Override
+                    public int compare(Result o1, Result o2) {
+                        return o1.score.compareTo(o2.score);
+                    }
+                });
+
+        ArrayList<Result> selected = new ArrayList<>();
+        boolean[] active = new boolean[boxes.size()];
+        Arrays.fill(active, true);
+        int numActive = active.length;
+
+        boolean done = false;
+        for (int i=0; i<boxes.size() && !done; i++) {
+            if (active[i]) {
+                Result boxA = boxes.get(i);
+                selected.add(boxA);
+                if (selected.size() >= limit) break;
+
+                for (int j=i+1; j<boxes.size(); j++) {
+                    if (active[j]) {
+                        Result boxB = boxes.get(j);
+                        if (IOU(boxA.rect, boxB.rect) > threshold) {
+                            active[j] = false;
+                            numActive -= 1;
+                            if (numActive <= 0) {
+                                done = true;
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return selected;
+    }
+
+    static float IOU(Box a, Box b) {
+        float areaA = (a.right - a.left) * (a.bottom - a.top);
+        if (areaA <= 0.0) return 0.0f;
+
+        float areaB = (b.right - b.left) * (b.bottom - b.top);
+        if (areaB <= 0.0) return 0.0f;
+
+        float intersectionMinX = Math.max(a.left, b.left);
+        float intersectionMinY = Math.max(a.top, b.top);
+        float intersectionMaxX = Math.min(a.right, b.right);
+        float intersectionMaxY = Math.min(a.bottom, b.bottom);
+        float intersectionArea = Math.max(intersectionMaxY - intersectionMinY, 0) *
+                Math.max(intersectionMaxX - intersectionMinX, 0);
+        return intersectionArea / (areaA + areaB - intersectionArea);
+    }
+
+    /** A Result for every row above {@code threshold}, before suppression. */
+    static ArrayList<Result> decode(float[] outputs, int rows, int columns, float threshold,
+                                    float imgScaleX, float imgScaleY, float ivScaleX, float ivScaleY, float startX, float startY) {
+        ArrayList<Result> results = new ArrayList<>();
+        for (int i = 0; i< rows; i++) {
+            if (outputs[i* columns +4] > threshold) {
+                float x = outputs[i* columns];
+                float y = outputs[i* columns +1];
+                float w = outputs[i* columns +2];
+                float h = outputs[i* columns +3];
+
+                float left = imgScaleX * (x - w/2);
+                float top = imgScaleY * (y - h/2);
+                float right = imgScaleX * (x + w/2);
+                float bottom = imgScaleY * (y + h/2);
+
+                float max = outputs[i* columns +5];
+                int cls = 0;
+                for (int j = 0; j < columns -5; j++) {
+                    if (outputs[i* columns +5+j] > max) {
+                        max = outputs[i* columns +5+j];
+                        cls = j;
+                    }
+                }
+
+                Box rect = new Box((int)(startX+ivScaleX*left), (int)(startY+top*ivScaleY), (int)(startX+ivScaleX*right), (int)(startY+ivScaleY*bottom));
+                Result result = new Result(cls, outputs[i*columns+4], rect);
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    static ArrayList<Result> outputsToNMSPredictions(float[] outputs, int rows, int columns, float threshold,
+                                                     int nmsLimit, float nmsThreshold) {
+        return nonMaxSuppression(decode(outputs, rows, columns, threshold, 1, 1, 1, 1, 0, 0), nmsLimit, nmsThreshold);
+    }
+}
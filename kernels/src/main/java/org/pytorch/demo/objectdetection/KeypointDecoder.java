@@ -0,0 +1,186 @@
+package org.pytorch.demo.objectdetection;
+
+/**
+ * Turns HRNet heatmaps into keypoint coordinates without leaving Java.
+ *
+ * Every heatmap gets the same 3x3 Gaussian blur (sigma 1, reflect-101 border) that
+ * Imgproc.GaussianBlur applied before. The blur is split into a horizontal and a vertical
+ * pass, and the argmax is tracked while the vertical pass writes its output, so each
+ * heatmap is read in place from the model output instead of being copied through a Mat.
+ * The peak can then be refined to sub-cell precision, which matters because one heatmap
+ * cell covers several input pixels.
+ *
+ * Scratch buffers are allocated once, so a decoder must not be shared between threads.
+ */
+public class KeypointDecoder {
+    public enum Refinement {
+        /** Integer argmax, as the original decoder did. */
+        NONE,
+        /** Fits a parabola through the peak and its neighbours along each axis. */
+        QUADRATIC,
+        /** DARK: second order Taylor expansion of the log heatmap around the peak. */
+        DARK
+    }
+
+    // exp(-x^2 / 2) for x = -1, 0, 1, normalized to sum to 1
+    private static final float EDGE = 0.27406862f;
+    private static final float CENTER = 0.45186276f;
+    // peaks weaker than this are treated as missing keypoints
+    private static final float MIN_SCORE = 0.01f;
+    private static final float MIN_LOG_INPUT = 1e-10f;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mNumKeypoints;
+    // heatmap cell size in input pixels
+    private final float mScaleX;
+    private final float mScaleY;
+    private final float[] mRowBlurred;
+    private final float[] mBlurred;
+    private float mOffsetX;
+    private float mOffsetY;
+    private Refinement mRefinement = Refinement.NONE;
+
+    public KeypointDecoder(int numKeypoints, int heatmapWidth, int heatmapHeight, int inputWidth, int inputHeight) {
+        mNumKeypoints = numKeypoints;
+        mWidth = heatmapWidth;
+        mHeight = heatmapHeight;
+        mScaleX = (float) inputWidth / heatmapWidth;
+        mScaleY = (float) inputHeight / heatmapHeight;
+        mRowBlurred = new float[heatmapWidth * heatmapHeight];
+        mBlurred = new float[heatmapWidth * heatmapHeight];
+    }
+
+    public void setRefinement(Refinement refinement) {
+        mRefinement = refinement;
+    }
+
+    public Refinement getRefinement() {
+        return mRefinement;
+    }
+
+    /**
+     * Decodes the heatmaps of one person starting at {@code offset} in {@code heatmaps}.
+     *
+     * @param points receives [0] x and [1] y in input pixels and [2] the peak score of every
+     *               keypoint. Missing keypoints are reported at (0, 0) with score 0.
+     */
+    public void decode(float[] heatmaps, int offset, float[][] points) {
+        final int size = mWidth * mHeight;
+        for (int k = 0; k < mNumKeypoints; k++) {
+            final int peak = blurArgmax(heatmaps, offset + k * size);
+            if (peak < 0) {
+                points[0][k] = 0;
+                points[1][k] = 0;
+                points[2][k] = 0;
+                continue;
+            }
+
+            final int px = peak % mWidth;
+            final int py = peak / mWidth;
+            float x = px;
+            float y = py;
+            if (mRefinement != Refinement.NONE && px > 0 && py > 0 && px < mWidth - 1 && py < mHeight - 1) {
+                if (mRefinement == Refinement.DARK && refineDark(px, py)) {
+                    x += mOffsetX;
+                    y += mOffsetY;
+                } else {
+                    x += parabolaOffset(mBlurred[peak - 1], mBlurred[peak], mBlurred[peak + 1]);
+                    y += parabolaOffset(mBlurred[peak - mWidth], mBlurred[peak], mBlurred[peak + mWidth]);
+                }
+            }
+            points[0][k] = x * mScaleX;
+            points[1][k] = y * mScaleY;
+            points[2][k] = mBlurred[peak];
+        }
+    }
+
+    /**
+     * Blurs one heatmap into {@link #mBlurred} and returns the index of its strongest cell,
+     * or -1 if no cell reaches {@link #MIN_SCORE}.
+     */
+    private int blurArgmax(float[] src, int base) {
+        final int w = mWidth;
+        final int h = mHeight;
+        final float[] rows = mRowBlurred;
+        final float[] out = mBlurred;
+
+        for (int y = 0; y < h; y++) {
+            final int row = base + y * w;
+            final int dst = y * w;
+            rows[dst] = CENTER * src[row] + 2 * EDGE * src[row + 1];
+            for (int x = 1; x < w - 1; x++) {
+                rows[dst + x] = EDGE * (src[row + x - 1] + src[row + x + 1]) + CENTER * src[row + x];
+            }
+            rows[dst + w - 1] = CENTER * src[row + w - 1] + 2 * EDGE * src[row + w - 2];
+        }
+
+        float max = MIN_SCORE;
+        int peak = -1;
+        for (int y = 0; y < h; y++) {
+            final int up = (y == 0 ? 1 : y - 1) * w;
+            final int down = (y == h - 1 ? h - 2 : y + 1) * w;
+            final int cur = y * w;
+            for (int x = 0; x < w; x++) {
+                final float v = EDGE * (rows[up + x] + rows[down + x]) + CENTER * rows[cur + x];
+                out[cur + x] = v;
+                if (v > max || (v == max && peak < 0)) {
+                    max = v;
+                    peak = cur + x;
+                }
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Newton step on the log heatmap. Leaves the offset in {@link #mOffsetX} and
+     * {@link #mOffsetY}, or returns false if the neighbourhood is not usable (non-positive
+     * values or not a maximum).
+     */
+    private boolean refineDark(int px, int py) {
+        final int w = mWidth;
+        final int c = py * w + px;
+        final float[] b = mBlurred;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if (b[c + dy * w + dx] < MIN_LOG_INPUT) {
+                    return false;
+                }
+            }
+        }
+
+        final double center = Math.log(b[c]);
+        final double left = Math.log(b[c - 1]);
+        final double right = Math.log(b[c + 1]);
+        final double up = Math.log(b[c - w]);
+        final double down = Math.log(b[c + w]);
+        final double gx = 0.5 * (right - left);
+        final double gy = 0.5 * (down - up);
+        final double hxx = right - 2 * center + left;
+        final double hyy = down - 2 * center + up;
+        final double hxy = 0.25 * (Math.log(b[c + w + 1]) - Math.log(b[c - w + 1])
+                - Math.log(b[c + w - 1]) + Math.log(b[c - w - 1]));
+        final double det = hxx * hyy - hxy * hxy;
+        if (det <= 0 || hxx >= 0) {
+            // not a maximum of the log surface
+            return false;
+        }
+
+        mOffsetX = clampOffset((float) (-(hyy * gx - hxy * gy) / det));
+        mOffsetY = clampOffset((float) (-(hxx * gy - hxy * gx) / det));
+        return true;
+    }
+
+    private static float parabolaOffset(float before, float center, float after) {
+        final float curvature = before - 2 * center + after;
+        if (curvature >= 0) {
+            return 0;
+        }
+        return clampOffset(0.5f * (before - after) / curvature);
+    }
+
+    private static float clampOffset(float offset) {
+        return Math.max(-0.5f, Math.min(0.5f, offset));
+    }
+}
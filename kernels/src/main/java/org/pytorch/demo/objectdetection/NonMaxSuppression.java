@@ -0,0 +1,259 @@
+package org.pytorch.demo.objectdetection;
+
+import java.util.Arrays;
+
+/**
+ * Greedy non-maximum suppression over boxes held in primitive arrays.
+ *
+ * Candidates are visited from the highest score down, and a candidate survives if it does
+ * not overlap an already selected box by more than the IOU threshold. That gives the same
+ * selection as suppressing the remaining boxes after every pick, but only ever compares
+ * against the selected set. In {@link Mode#GRID} the selected boxes are also registered in
+ * a uniform grid, so a candidate is only compared with selected boxes sharing a cell. That
+ * keeps crowded frames with low confidence thresholds from going quadratic.
+ *
+ * Boxes of different classes never suppress each other when the engine is class aware.
+ * Scratch space is reused between calls; an engine must not be shared between threads.
+ */
+public class NonMaxSuppression {
+    public enum Mode {
+        /** Compare every candidate with every selected box. Best for small limits. */
+        EXHAUSTIVE,
+        /** Only compare with selected boxes in overlapping grid cells. */
+        GRID
+    }
+
+    // grid resolution limits
+    private static final int MAX_GRID_SIDE = 64;
+
+    private Mode mMode = Mode.EXHAUSTIVE;
+    private boolean mClassAware;
+
+    private int[] mOrder = new int[0];
+    private int[] mKept = new int[0];
+    private int mKeptCount;
+
+    // grid cells as singly linked lists of selected box indices
+    private int[] mCellHead = new int[0];
+    private int[] mEntryNext = new int[0];
+    private int[] mEntryBox = new int[0];
+    private int mEntryCount;
+    // last candidate each box was compared with, to skip boxes seen through another cell
+    private int[] mVisited = new int[0];
+    private int mGridCols;
+    private int mGridRows;
+    private float mGridLeft;
+    private float mGridTop;
+    private float mCellWidth;
+    private float mCellHeight;
+
+    public void setMode(Mode mode) {
+        mMode = mode;
+    }
+
+    public void setClassAware(boolean classAware) {
+        mClassAware = classAware;
+    }
+
+    /**
+     * Runs suppression over the first {@code count} boxes.
+     *
+     * @param classes class of every box, only read when the engine is class aware
+     * @return the number of selected boxes, retrieved in descending score order with
+     * {@link #getKept(int)}
+     */
+    public int run(float[] left, float[] top, float[] right, float[] bottom, float[] scores, int[] classes,
+                   int count, int limit, float iouThreshold) {
+        if (mOrder.length < count) {
+            mOrder = new int[count];
+            mKept = new int[count];
+            mVisited = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            mOrder[i] = i;
+        }
+        sortByScoreDescending(mOrder, scores, 0, count - 1);
+
+        mKeptCount = 0;
+        final boolean grid = mMode == Mode.GRID && count > 1;
+        if (grid) {
+            buildGrid(left, top, right, bottom, count);
+        }
+
+        for (int n = 0; n < count && mKeptCount < limit; n++) {
+            final int candidate = mOrder[n];
+            final boolean suppressed = grid
+                    ? overlapsGrid(candidate, n, left, top, right, bottom, classes, iouThreshold)
+                    : overlapsKept(candidate, left, top, right, bottom, classes, iouThreshold);
+            if (!suppressed) {
+                mKept[mKeptCount++] = candidate;
+                if (grid) {
+                    insertGrid(candidate, left, top, right, bottom);
+                }
+            }
+        }
+        return mKeptCount;
+    }
+
+    /** Index, into the arrays passed to {@link #run}, of the i-th selected box. */
+    public int getKept(int i) {
+        return mKept[i];
+    }
+
+    /** Computes intersection-over-union overlap between two boxes. */
+    public static float iou(float leftA, float topA, float rightA, float bottomA,
+                            float leftB, float topB, float rightB, float bottomB) {
+        final float areaA = (rightA - leftA) * (bottomA - topA);
+        if (areaA <= 0) return 0;
+        final float areaB = (rightB - leftB) * (bottomB - topB);
+        if (areaB <= 0) return 0;
+
+        final float width = Math.min(rightA, rightB) - Math.max(leftA, leftB);
+        if (width <= 0) return 0;
+        final float height = Math.min(bottomA, bottomB) - Math.max(topA, topB);
+        if (height <= 0) return 0;
+        final float intersection = width * height;
+        return intersection / (areaA + areaB - intersection);
+    }
+
+    private boolean overlapsKept(int candidate, float[] left, float[] top, float[] right, float[] bottom,
+                                 int[] classes, float iouThreshold) {
+        for (int k = 0; k < mKeptCount; k++) {
+            final int box = mKept[k];
+            if (mClassAware && classes[box] != classes[candidate]) {
+                continue;
+            }
+            if (iou(left[box], top[box], right[box], bottom[box],
+                    left[candidate], top[candidate], right[candidate], bottom[candidate]) > iouThreshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void buildGrid(float[] left, float[] top, float[] right, float[] bottom, int count) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        float sumWidth = 0, sumHeight = 0;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, left[i]);
+            minY = Math.min(minY, top[i]);
+            maxX = Math.max(maxX, right[i]);
+            maxY = Math.max(maxY, bottom[i]);
+            sumWidth += Math.max(0, right[i] - left[i]);
+            sumHeight += Math.max(0, bottom[i] - top[i]);
+        }
+
+        // cells about the size of an average box: most boxes touch a handful of cells
+        final float spanX = Math.max(maxX - minX, 1e-3f);
+        final float spanY = Math.max(maxY - minY, 1e-3f);
+        mGridCols = clampSide((int) (spanX / Math.max(sumWidth / count, 1e-3f)));
+        mGridRows = clampSide((int) (spanY / Math.max(sumHeight / count, 1e-3f)));
+        mGridLeft = minX;
+        mGridTop = minY;
+        mCellWidth = spanX / mGridCols;
+        mCellHeight = spanY / mGridRows;
+
+        final int cells = mGridCols * mGridRows;
+        if (mCellHead.length < cells) {
+            mCellHead = new int[cells];
+        }
+        Arrays.fill(mCellHead, 0, cells, -1);
+        mEntryCount = 0;
+        Arrays.fill(mVisited, 0, count, -1);
+    }
+
+    private void insertGrid(int box, float[] left, float[] top, float[] right, float[] bottom) {
+        final int col0 = cellCol(left[box]);
+        final int col1 = cellCol(right[box]);
+        final int row0 = cellRow(top[box]);
+        final int row1 = cellRow(bottom[box]);
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                if (mEntryCount == mEntryBox.length) {
+                    final int capacity = Math.max(64, 2 * mEntryCount);
+                    mEntryBox = Arrays.copyOf(mEntryBox, capacity);
+                    mEntryNext = Arrays.copyOf(mEntryNext, capacity);
+                }
+                final int cell = row * mGridCols + col;
+                mEntryBox[mEntryCount] = box;
+                mEntryNext[mEntryCount] = mCellHead[cell];
+                mCellHead[cell] = mEntryCount++;
+            }
+        }
+    }
+
+    private boolean overlapsGrid(int candidate, int rank, float[] left, float[] top, float[] right, float[] bottom,
+                                 int[] classes, float iouThreshold) {
+        final int col0 = cellCol(left[candidate]);
+        final int col1 = cellCol(right[candidate]);
+        final int row0 = cellRow(top[candidate]);
+        final int row1 = cellRow(bottom[candidate]);
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                for (int e = mCellHead[row * mGridCols + col]; e >= 0; e = mEntryNext[e]) {
+                    final int box = mEntryBox[e];
+                    if (mVisited[box] == rank) {
+                        continue;
+                    }
+                    mVisited[box] = rank;
+                    if (mClassAware && classes[box] != classes[candidate]) {
+                        continue;
+                    }
+                    if (iou(left[box], top[box], right[box], bottom[box],
+                            left[candidate], top[candidate], right[candidate], bottom[candidate]) > iouThreshold) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private int cellCol(float x) {
+        return Math.max(0, Math.min(mGridCols - 1, (int) ((x - mGridLeft) / mCellWidth)));
+    }
+
+    private int cellRow(float y) {
+        return Math.max(0, Math.min(mGridRows - 1, (int) ((y - mGridTop) / mCellHeight)));
+    }
+
+    private static int clampSide(int side) {
+        return Math.max(1, Math.min(MAX_GRID_SIDE, side));
+    }
+
+    // quicksort of box indices by descending score, falling back to insertion sort on short runs
+    private static void sortByScoreDescending(int[] order, float[] scores, int lo, int hi) {
+        while (hi - lo > 16) {
+            final float pivot = scores[order[(lo + hi) >>> 1]];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (scores[order[i]] > pivot) i++;
+                while (scores[order[j]] < pivot) j--;
+                if (i <= j) {
+                    final int tmp = order[i];
+                    order[i++] = order[j];
+                    order[j--] = tmp;
+                }
+            }
+            // recurse into the smaller half to bound the stack depth
+            if (j - lo < hi - i) {
+                sortByScoreDescending(order, scores, lo, j);
+                lo = i;
+            } else {
+                sortByScoreDescending(order, scores, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            final int index = order[i];
+            final float score = scores[index];
+            int j = i - 1;
+            while (j >= lo && scores[order[j]] < score) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = index;
+        }
+    }
+}
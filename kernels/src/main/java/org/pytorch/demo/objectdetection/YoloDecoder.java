@@ -0,0 +1,205 @@
+package org.pytorch.demo.objectdetection;
+
+/**
+ * Decodes raw YOLOv5 output rows (x, y, w, h, objectness, class scores...) into the K best
+ * candidates without allocating per candidate, ready for {@link NonMaxSuppression}.
+ * Candidates live in parallel primitive arrays organized as a min-heap on score, so a row
+ * only pays for the class argmax if its objectness could still beat the weakest candidate
+ * kept so far. Boxes stay in model input
+ * coordinates; callers map the survivors to whatever space they draw in.
+ *
+ * A decoder keeps its state between calls and must not be shared between threads.
+ */
+public class YoloDecoder {
+    private final int mRows;
+    private final int mColumns;
+    private final int mMaxCandidates;
+    private final float mThreshold;
+    private final boolean mUseClassScore;
+
+    // candidate slots, addressed through mHeap
+    private final float[] mScores;
+    private final int[] mClasses;
+    private final float[] mLeft;
+    private final float[] mTop;
+    private final float[] mRight;
+    private final float[] mBottom;
+    // min-heap of slot indices while decoding, slots by descending score afterwards
+    private final int[] mHeap;
+    private int mCount;
+
+    // the kept candidates by descending score, filled at the end of decode()
+    private final float[] mSortedScores;
+    private final int[] mSortedClasses;
+    private final float[] mSortedLeft;
+    private final float[] mSortedTop;
+    private final float[] mSortedRight;
+    private final float[] mSortedBottom;
+
+    /**
+     * @param useClassScore score candidates with objectness * best class score instead of
+     *                      objectness alone
+     */
+    public YoloDecoder(int rows, int columns, int maxCandidates, float threshold, boolean useClassScore) {
+        mRows = rows;
+        mColumns = columns;
+        mMaxCandidates = maxCandidates;
+        mThreshold = threshold;
+        mUseClassScore = useClassScore;
+        mScores = new float[maxCandidates];
+        mClasses = new int[maxCandidates];
+        mLeft = new float[maxCandidates];
+        mTop = new float[maxCandidates];
+        mRight = new float[maxCandidates];
+        mBottom = new float[maxCandidates];
+        mHeap = new int[maxCandidates];
+        mSortedScores = new float[maxCandidates];
+        mSortedClasses = new int[maxCandidates];
+        mSortedLeft = new float[maxCandidates];
+        mSortedTop = new float[maxCandidates];
+        mSortedRight = new float[maxCandidates];
+        mSortedBottom = new float[maxCandidates];
+    }
+
+    /**
+     * Keeps the best candidates of {@code outputs} above the threshold. Afterwards candidate
+     * 0 to {@link #getCount()} - 1 are ordered by descending score.
+     *
+     * @return the number of candidates kept
+     */
+    public int decode(float[] outputs) {
+        mCount = 0;
+        final int columns = mColumns;
+        for (int i = 0, base = 0; i < mRows; i++, base += columns) {
+            final float objectness = outputs[base + 4];
+            // class scores are probabilities, so objectness is an upper bound for the score
+            if (objectness <= mThreshold || (mCount == mMaxCandidates && objectness <= mScores[mHeap[0]])) {
+                continue;
+            }
+
+            float max = outputs[base + 5];
+            int cls = 0;
+            for (int j = 1; j < columns - 5; j++) {
+                if (outputs[base + 5 + j] > max) {
+                    max = outputs[base + 5 + j];
+                    cls = j;
+                }
+            }
+
+            final float score = mUseClassScore ? objectness * max : objectness;
+            if (mUseClassScore && (score <= mThreshold || (mCount == mMaxCandidates && score <= mScores[mHeap[0]]))) {
+                continue;
+            }
+
+            final int slot;
+            if (mCount < mMaxCandidates) {
+                slot = mCount;
+                mHeap[mCount++] = slot;
+                store(slot, outputs, base, score, cls);
+                siftUp(mCount - 1);
+            } else {
+                slot = mHeap[0];
+                store(slot, outputs, base, score, cls);
+                siftDown(0, mCount);
+            }
+        }
+        sortDescending();
+        for (int i = 0; i < mCount; i++) {
+            final int slot = mHeap[i];
+            mSortedScores[i] = mScores[slot];
+            mSortedClasses[i] = mClasses[slot];
+            mSortedLeft[i] = mLeft[slot];
+            mSortedTop[i] = mTop[slot];
+            mSortedRight[i] = mRight[slot];
+            mSortedBottom[i] = mBottom[slot];
+        }
+        return mCount;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    // The arrays below are indexed by candidate rank and only valid up to getCount().
+
+    public float[] getScores() {
+        return mSortedScores;
+    }
+
+    public int[] getClasses() {
+        return mSortedClasses;
+    }
+
+    public float[] getLefts() {
+        return mSortedLeft;
+    }
+
+    public float[] getTops() {
+        return mSortedTop;
+    }
+
+    public float[] getRights() {
+        return mSortedRight;
+    }
+
+    public float[] getBottoms() {
+        return mSortedBottom;
+    }
+
+    private void store(int slot, float[] outputs, int base, float score, int cls) {
+        final float x = outputs[base];
+        final float y = outputs[base + 1];
+        final float w = outputs[base + 2];
+        final float h = outputs[base + 3];
+        mScores[slot] = score;
+        mClasses[slot] = cls;
+        mLeft[slot] = x - w / 2;
+        mTop[slot] = y - h / 2;
+        mRight[slot] = x + w / 2;
+        mBottom[slot] = y + h / 2;
+    }
+
+    private void siftUp(int i) {
+        final int slot = mHeap[i];
+        final float score = mScores[slot];
+        while (i > 0) {
+            final int parent = (i - 1) >> 1;
+            if (mScores[mHeap[parent]] <= score) {
+                break;
+            }
+            mHeap[i] = mHeap[parent];
+            i = parent;
+        }
+        mHeap[i] = slot;
+    }
+
+    private void siftDown(int i, int size) {
+        final int slot = mHeap[i];
+        final float score = mScores[slot];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && mScores[mHeap[child + 1]] < mScores[mHeap[child]]) {
+                child++;
+            }
+            if (mScores[mHeap[child]] >= score) {
+                break;
+            }
+            mHeap[i] = mHeap[child];
+            i = child;
+        }
+        mHeap[i] = slot;
+    }
+
+    // heap sort on the min-heap leaves the slots ordered from highest to lowest score
+    private void sortDescending() {
+        for (int end = mCount - 1; end > 0; end--) {
+            final int min = mHeap[0];
+            mHeap[0] = mHeap[end];
+            mHeap[end] = min;
+            siftDown(0, end);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package org.pytorch.demo.objectdetection;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link YoloDecoder} and {@link NonMaxSuppression} against the per-row decode that
+ * PrePostProcessor.outputsToNMSPredictions did before them, on synthetic YOLOv5 output.
+ */
+public class YoloDecoderTest {
+    // same as PrePostProcessor
+    private static final int ROWS = 25200;
+    private static final int COLUMNS = 85;
+    private static final int INPUT_SIZE = 640;
+    private static final float THRESHOLD = 0.25f;
+    private static final float NMS_THRESHOLD = 0.30f;
+    private static final int NMS_LIMIT = 15;
+
+    private static final int CANDIDATES = 120;
+
+    // one decoded row of the old code, with the box left in model input space
+    private static class Candidate {
+        final int cls;
+        final float score;
+        final float left, top, right, bottom;
+
+        Candidate(int cls, float score, float left, float top, float right, float bottom) {
+            this.cls = cls;
+            this.score = score;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+    }
+
+    @Test
+    public void keepsEveryCandidateWhenKIsAboveTheCandidateCount() {
+        checkAgainstLegacy(syntheticOutputs(1, CANDIDATES), 300, false);
+    }
+
+    @Test
+    public void keepsTheBestCandidatesWhenKIsBelowTheCandidateCount() {
+        checkAgainstLegacy(syntheticOutputs(2, CANDIDATES), 40, false);
+    }
+
+    @Test
+    public void combinesObjectnessAndClassScore() {
+        checkAgainstLegacy(syntheticOutputs(3, CANDIDATES), 300, true);
+        checkAgainstLegacy(syntheticOutputs(4, CANDIDATES), 40, true);
+    }
+
+    @Test
+    public void returnsNothingBelowTheThreshold() {
+        final float[] outputs = syntheticOutputs(5, 0);
+        for (boolean classScore : new boolean[] {false, true}) {
+            final YoloDecoder decoder = new YoloDecoder(ROWS, COLUMNS, 300, THRESHOLD, classScore);
+            assertEquals(0, decoder.decode(outputs));
+            assertEquals(0, new NonMaxSuppression().run(decoder.getLefts(), decoder.getTops(), decoder.getRights(),
+                    decoder.getBottoms(), decoder.getScores(), decoder.getClasses(), 0, NMS_LIMIT, NMS_THRESHOLD));
+        }
+        assertEquals(0, legacyDecode(outputs, false).size());
+    }
+
+    @Test
+    public void excludesScoresEqualToTheThreshold() {
+        final float[] outputs = syntheticOutputs(6, 0);
+        outputs[10 * COLUMNS + 4] = THRESHOLD;
+        outputs[20 * COLUMNS + 4] = Math.nextUp(THRESHOLD);
+        final YoloDecoder decoder = new YoloDecoder(ROWS, COLUMNS, 300, THRESHOLD, false);
+        assertEquals(1, decoder.decode(outputs));
+        assertEquals(Math.nextUp(THRESHOLD), decoder.getScores()[0], 0);
+        assertEquals(1, legacyDecode(outputs, false).size());
+    }
+
+    private static void checkAgainstLegacy(float[] outputs, int maxCandidates, boolean classScore) {
+        final List<Candidate> expected = legacyDecode(outputs, classScore);
+        sortByScoreDescending(expected);
+        final List<Candidate> top = expected.subList(0, Math.min(maxCandidates, expected.size()));
+
+        final YoloDecoder decoder = new YoloDecoder(ROWS, COLUMNS, maxCandidates, THRESHOLD, classScore);
+        final int count = decoder.decode(outputs);
+        assertEquals(top.size(), count);
+        for (int i = 0; i < count; i++) {
+            assertCandidate(top.get(i), decoder, i);
+        }
+
+        final List<Candidate> survivors = legacyNonMaxSuppression(new ArrayList<>(top), NMS_LIMIT, NMS_THRESHOLD);
+        for (NonMaxSuppression.Mode mode : NonMaxSuppression.Mode.values()) {
+            final NonMaxSuppression nms = new NonMaxSuppression();
+            nms.setMode(mode);
+            final int kept = nms.run(decoder.getLefts(), decoder.getTops(), decoder.getRights(), decoder.getBottoms(),
+                    decoder.getScores(), decoder.getClasses(), count, NMS_LIMIT, NMS_THRESHOLD);
+            assertEquals(mode.name(), survivors.size(), kept);
+            for (int k = 0; k < kept; k++) {
+                assertCandidate(survivors.get(k), decoder, nms.getKept(k));
+            }
+        }
+    }
+
+    private static void assertCandidate(Candidate expected, YoloDecoder decoder, int i) {
+        assertEquals(expected.score, decoder.getScores()[i], 0);
+        assertEquals(expected.cls, decoder.getClasses()[i]);
+        assertEquals(expected.left, decoder.getLefts()[i], 0);
+        assertEquals(expected.top, decoder.getTops()[i], 0);
+        assertEquals(expected.right, decoder.getRights()[i], 0);
+        assertEquals(expected.bottom, decoder.getBottoms()[i], 0);
+    }
+
+    /**
+     * Background rows below the threshold plus {@code candidates} rows above it, with
+     * distinct objectness values and boxes clustered around a few objects so that NMS has
+     * overlaps to suppress.
+     */
+    private static float[] syntheticOutputs(long seed, int candidates) {
+        final Random random = new Random(seed);
+        final float[] outputs = new float[ROWS * COLUMNS];
+        for (int i = 0; i < ROWS; i++) {
+            final int base = i * COLUMNS;
+            outputs[base] = random.nextFloat() * INPUT_SIZE;
+            outputs[base + 1] = random.nextFloat() * INPUT_SIZE;
+            outputs[base + 2] = 10 + random.nextFloat() * 100;
+            outputs[base + 3] = 10 + random.nextFloat() * 100;
+            outputs[base + 4] = random.nextFloat() * THRESHOLD;
+            for (int j = 5; j < COLUMNS; j++) {
+                outputs[base + j] = random.nextFloat();
+            }
+        }
+
+        final int[] rows = new int[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = i;
+        }
+        for (int i = 0; i < candidates; i++) {
+            final int j = i + random.nextInt(ROWS - i);
+            final int row = rows[j];
+            rows[j] = rows[i];
+            rows[i] = row;
+        }
+        final float[][] objects = new float[6][];
+        for (int o = 0; o < objects.length; o++) {
+            objects[o] = new float[] {80 + random.nextFloat() * 480, 80 + random.nextFloat() * 480,
+                    40 + random.nextFloat() * 120, 40 + random.nextFloat() * 200};
+        }
+        for (int i = 0; i < candidates; i++) {
+            final int base = rows[i] * COLUMNS;
+            final float[] object = objects[random.nextInt(objects.length)];
+            outputs[base] = object[0] + (random.nextFloat() - 0.5f) * object[2] * 0.5f;
+            outputs[base + 1] = object[1] + (random.nextFloat() - 0.5f) * object[3] * 0.5f;
+            outputs[base + 2] = object[2] * (0.8f + random.nextFloat() * 0.4f);
+            outputs[base + 3] = object[3] * (0.8f + random.nextFloat() * 0.4f);
+            outputs[base + 4] = THRESHOLD + (1 - THRESHOLD) * (i + 1) / (candidates + 1);
+        }
+        return outputs;
+    }
+
+    // the old outputsToNMSPredictions loop, with the optional combined score of the decoder
+    private static List<Candidate> legacyDecode(float[] outputs, boolean classScore) {
+        final List<Candidate> results = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            if (outputs[i * COLUMNS + 4] > THRESHOLD) {
+                final float x = outputs[i * COLUMNS];
+                final float y = outputs[i * COLUMNS + 1];
+                final float w = outputs[i * COLUMNS + 2];
+                final float h = outputs[i * COLUMNS + 3];
+
+                float max = outputs[i * COLUMNS + 5];
+                int cls = 0;
+                for (int j = 0; j < COLUMNS - 5; j++) {
+                    if (outputs[i * COLUMNS + 5 + j] > max) {
+                        max = outputs[i * COLUMNS + 5 + j];
+                        cls = j;
+                    }
+                }
+
+                final float score = classScore ? outputs[i * COLUMNS + 4] * max : outputs[i * COLUMNS + 4];
+                if (score > THRESHOLD) {
+                    results.add(new Candidate(cls, score, x - w / 2, y - h / 2, x + w / 2, y + h / 2));
+                }
+            }
+        }
+        return results;
+    }
+
+    // the old nonMaxSuppression, sorting from the highest score down
+    private static List<Candidate> legacyNonMaxSuppression(List<Candidate> boxes, int limit, float threshold) {
+        sortByScoreDescending(boxes);
+        final List<Candidate> selected = new ArrayList<>();
+        final boolean[] active = new boolean[boxes.size()];
+        Arrays.fill(active, true);
+        int numActive = active.length;
+
+        boolean done = false;
+        for (int i = 0; i < boxes.size() && !done; i++) {
+            if (active[i]) {
+                final Candidate boxA = boxes.get(i);
+                selected.add(boxA);
+                if (selected.size() >= limit) break;
+
+                for (int j = i + 1; j < boxes.size(); j++) {
+                    if (active[j] && legacyIou(boxA, boxes.get(j)) > threshold) {
+                        active[j] = false;
+                        numActive -= 1;
+                        if (numActive <= 0) {
+                            done = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return selected;
+    }
+
+    private static float legacyIou(Candidate a, Candidate b) {
+        final float areaA = (a.right - a.left) * (a.bottom - a.top);
+        if (areaA <= 0.0) return 0.0f;
+        final float areaB = (b.right - b.left) * (b.bottom - b.top);
+        if (areaB <= 0.0) return 0.0f;
+
+        final float intersectionArea = Math.max(Math.min(a.bottom, b.bottom) - Math.max(a.top, b.top), 0)
+                * Math.max(Math.min(a.right, b.right) - Math.max(a.left, b.left), 0);
+        return intersectionArea / (areaA + areaB - intersectionArea);
+    }
+
+    private static void sortByScoreDescending(List<Candidate> candidates) {
+        Collections.sort(candidates, (a, b) -> Float.compare(b.score, a.score));
+    }
+}